@@ -0,0 +1,96 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durchsatz von {@link AppointmentRepository#reserve(Appointment, Customer)} für einen Request-Handler, der
+ * {@link #BATCH} Reservierungen blockierend nacheinander ausführt, verglichen mit einem, der sie über das
+ * {@link AsyncAppointmentRepository} alle abschickt und erst danach auf die Ergebnisse wartet.
+ * Jeder Thread reserviert die ersten Termine seines {@link DataSet.Slice}, die nach jedem Aufruf außerhalb der
+ * Messung wieder storniert werden.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(AsyncBenchmark.BATCH)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncBenchmark {
+
+    static final int BATCH = 16;
+
+    @State(Scope.Benchmark)
+    public static class Async {
+        AsyncAppointmentRepository repository;
+
+        @Setup(Level.Trial)
+        public void open(DataSet data) {
+            repository = new AsyncAppointmentRepositoryFactory(data.repository, AsyncAppointmentRepositoryFactory.DEFAULT_MAX_CONNECTIONS);
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            repository.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        List<Appointment> appointments;
+
+        @Setup(Level.Trial)
+        public void assign(DataSet data, DataSet.Slice slice) {
+            if (data.appointmentsPerProvider / 2 < BATCH)
+                throw new IllegalArgumentException("Every provider needs " + BATCH + " free appointments");
+            appointments = slice.provider.getAppointments().subList(0, BATCH);
+        }
+
+        @TearDown(Level.Invocation)
+        public void release(DataSet data, DataSet.Slice slice) {
+            for (Appointment appointment : appointments) {
+                data.repository.cancel(appointment, slice.customer);
+            }
+        }
+    }
+
+    @Benchmark
+    public int blocking(DataSet data, DataSet.Slice slice, Batch batch) {
+        int reserved = 0;
+        for (Appointment appointment : batch.appointments) {
+            if (data.repository.reserve(appointment, slice.customer))
+                reserved++;
+        }
+        return reserved;
+    }
+
+    @Benchmark
+    public int async(Async async, DataSet.Slice slice, Batch batch) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Appointment appointment : batch.appointments) {
+            futures.add(async.repository.reserve(appointment, slice.customer));
+        }
+        int reserved = 0;
+        for (CompletableFuture<Boolean> future : futures) {
+            if (future.join())
+                reserved++;
+        }
+        return reserved;
+    }
+}
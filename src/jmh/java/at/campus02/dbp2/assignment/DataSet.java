@@ -0,0 +1,123 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Der vorab geladene Datenbestand, gegen den alle Benchmarks laufen.
+ * <p>Jeder Provider bietet <code>appointmentsPerProvider</code> Termine im Viertelstunden-Raster an, 32 pro Tag ab dem
+ * {@link #START}. Customer <code>c</code> hat einen Termin am Ende des Angebots von Provider <code>c % providers</code>
+ * gebucht - die vordere Hälfte der Termine bleibt frei und gehört den {@link Slice}s der schreibenden Benchmarks.
+ */
+@State(Scope.Benchmark)
+public class DataSet {
+
+    static final LocalDateTime START = LocalDateTime.of(2022, 1, 3, 8, 0);
+    static final int SLOTS_PER_DAY = 32;
+
+    @Param("200")
+    public int providers;
+
+    @Param("100")
+    public int appointmentsPerProvider;
+
+    @Param("1000")
+    public int customers;
+
+    EntityManagerFactory factory;
+    AppointmentRepository repository;
+    final List<Provider> providerList = new ArrayList<>();
+    final List<Customer> customerList = new ArrayList<>();
+    private final AtomicInteger slices = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void load() {
+        if (providers < 1 || customers < 1 || customers > providers * (appointmentsPerProvider / 2))
+            throw new IllegalArgumentException("Every customer needs a booked appointment in the second half of a provider");
+
+        // jeder Trial beginnt mit einer leeren Datenbank
+        factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE));
+        repository = AppointmentRepositoryFactory.get(factory);
+
+        for (int p = 0; p < providers; p++) {
+            Provider provider = new Provider();
+            provider.setType(ProviderType.values()[p % ProviderType.values().length]);
+            provider.setAddress(address(p));
+            for (int a = 0; a < appointmentsPerProvider; a++) {
+                Appointment appointment = new Appointment();
+                appointment.setTime(timeOf(a));
+                provider.getAppointments().add(appointment);
+            }
+            providerList.add(provider);
+        }
+        repository.createAll(providerList);
+
+        for (int c = 0; c < customers; c++) {
+            Customer customer = new Customer("kunde" + c + "@campus02.at");
+            customer.setLastname("Nachname" + c);
+            customer.setFirstname("Vorname" + c);
+            repository.create(customer);
+            customerList.add(customer);
+            List<Appointment> offer = providerList.get(c % providers).getAppointments();
+            repository.reserve(offer.get(appointmentsPerProvider - 1 - c / providers), customer);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        repository.close();
+        factory.close();
+    }
+
+    static String address(int provider) {
+        return "Gasse " + provider + ", " + (8010 + provider % 90) + " Graz";
+    }
+
+    static LocalDateTime timeOf(int appointment) {
+        return START.plusDays(appointment / SLOTS_PER_DAY).plusMinutes(15L * (appointment % SLOTS_PER_DAY));
+    }
+
+    /**
+     * Vergibt die Slices der Benchmark-Threads - Thread <code>n</code> bekommt Provider <code>n</code>.
+     */
+    int nextSlice() {
+        int slice = slices.getAndIncrement();
+        if (slice >= providers)
+            throw new IllegalStateException("More benchmark threads than providers");
+        return slice;
+    }
+
+    /**
+     * Der Teil des Datenbestands, den ein einzelner Benchmark-Thread verändert, damit sich schreibende Threads
+     * nicht gegenseitig die Termine wegnehmen.
+     */
+    @State(Scope.Thread)
+    public static class Slice {
+        int index;
+        Provider provider;
+        Customer customer;
+        Appointment appointment;
+
+        @Setup(Level.Trial)
+        public void assign(DataSet data) {
+            index = data.nextSlice();
+            provider = data.providerList.get(index);
+            customer = data.customerList.get(index % data.customers);
+            appointment = provider.getAppointments().get(0);
+        }
+    }
+}
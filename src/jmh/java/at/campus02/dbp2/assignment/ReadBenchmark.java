@@ -0,0 +1,59 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Die lesenden Methoden des {@link AppointmentRepository} mit zufälligen Suchbegriffen aus dem {@link DataSet}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    private static int random(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    @Benchmark
+    public List<Appointment> findAppointments(DataSet data) {
+        // eine Stunde an einem zufälligen Tag - vier Termine pro Provider
+        int days = (data.appointmentsPerProvider + DataSet.SLOTS_PER_DAY - 1) / DataSet.SLOTS_PER_DAY;
+        LocalDateTime from = DataSet.START.plusDays(random(days)).plusHours(random(DataSet.SLOTS_PER_DAY / 4));
+        return data.repository.findAppointments(from, from.plusMinutes(45));
+    }
+
+    @Benchmark
+    public List<Appointment> findAppointmentsAt(DataSet data) {
+        return data.repository.findAppointmentsAt("Gasse " + random(data.providers) + ",");
+    }
+
+    @Benchmark
+    public List<Provider> findProvidersBy(DataSet data) {
+        ProviderType type = ProviderType.values()[random(ProviderType.values().length)];
+        return data.repository.findProvidersBy(type, String.valueOf(8010 + random(90)));
+    }
+
+    @Benchmark
+    public List<Customer> findCustomersBy(DataSet data) {
+        int customer = random(data.customers);
+        return data.repository.findCustomersBy("Nachname" + customer, "Vorname" + customer);
+    }
+
+    @Benchmark
+    public List<Appointment> getAppointmentsFor(DataSet data) {
+        return data.repository.getAppointmentsFor(data.customerList.get(random(data.customers)));
+    }
+}
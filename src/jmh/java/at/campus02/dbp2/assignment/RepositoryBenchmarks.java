@@ -0,0 +1,44 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Startet {@link ReadBenchmark}, {@link WriteBenchmark} und {@link AsyncBenchmark} einmal pro gewünschter Thread-Anzahl.
+ * <p>Aufruf: <code>gradle jmh -Dbenchmarks=Read -Dthreads=1,8 -Dproviders=1000 -DappointmentsPerProvider=200
+ * -Dcustomers=10000 -Djmh="-wi 1 -i 3"</code> - alle Angaben sind optional, <code>jmh</code> wird als
+ * JMH-Kommandozeile übernommen.
+ */
+public class RepositoryBenchmarks {
+
+    private static final List<String> DATA_SET_PARAMS = Arrays.asList("providers", "appointmentsPerProvider", "customers");
+
+    public static void main(String[] args) throws Exception {
+        List<String> commandLine = new ArrayList<>(Arrays.asList(args));
+        String jmh = System.getProperty("jmh");
+        if (jmh != null && !jmh.isBlank())
+            commandLine.addAll(Arrays.asList(jmh.trim().split("\\s+")));
+        CommandLineOptions options = new CommandLineOptions(commandLine.toArray(new String[0]));
+
+        for (String threads : System.getProperty("threads", "1,4").split(",")) {
+            ChainedOptionsBuilder builder = new OptionsBuilder()
+                    .parent(options)
+                    .threads(Integer.parseInt(threads.trim()));
+            String benchmarks = System.getProperty("benchmarks");
+            if (benchmarks != null)
+                builder.include(benchmarks);
+            for (String name : DATA_SET_PARAMS) {
+                String value = System.getProperty(name);
+                if (value != null)
+                    builder.param(name, value.split(","));
+            }
+            new Runner(builder.build()).run();
+        }
+    }
+}
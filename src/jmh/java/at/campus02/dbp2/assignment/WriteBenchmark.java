@@ -0,0 +1,86 @@
+package at.campus02.dbp2.assignment;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Die schreibenden Methoden des {@link AppointmentRepository}. Jeder Thread arbeitet auf seinem eigenen
+ * {@link DataSet.Slice}; der Zustand vor jedem Aufruf wird außerhalb der Messung hergestellt bzw. danach wieder
+ * zurückgesetzt, damit der Datenbestand über die ganze Messung gleich groß bleibt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @State(Scope.Thread)
+    public static class Free {
+        @Setup(Level.Invocation)
+        public void release(DataSet data, DataSet.Slice slice) {
+            data.repository.cancel(slice.appointment, slice.customer);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Booked {
+        @Setup(Level.Invocation)
+        public void book(DataSet data, DataSet.Slice slice) {
+            data.repository.reserve(slice.appointment, slice.customer);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NewProvider {
+        @Param("10")
+        public int newAppointments;
+
+        Provider provider;
+
+        @Setup(Level.Invocation)
+        public void prepare(DataSet.Slice slice) {
+            provider = new Provider();
+            provider.setType(ProviderType.ALLGMEINMEDIZIN);
+            provider.setAddress("Neue Gasse " + slice.index + ", 8020 Graz");
+            for (int a = 0; a < newAppointments; a++) {
+                Appointment appointment = new Appointment();
+                appointment.setTime(DataSet.timeOf(a));
+                provider.getAppointments().add(appointment);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void remove(DataSet data) {
+            data.repository.delete(provider);
+        }
+    }
+
+    @Benchmark
+    public boolean reserve(DataSet data, DataSet.Slice slice, Free free) {
+        return data.repository.reserve(slice.appointment, slice.customer);
+    }
+
+    @Benchmark
+    public boolean cancel(DataSet data, DataSet.Slice slice, Booked booked) {
+        return data.repository.cancel(slice.appointment, slice.customer);
+    }
+
+    @Benchmark
+    public boolean createProvider(DataSet data, NewProvider newProvider) {
+        return data.repository.create(newProvider.provider);
+    }
+}
@@ -0,0 +1,61 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Ein Eintrag im Trigramm-Index der Provider-Adressen (siehe {@link AddressTrigrams}).
+ * Die Tabelle wird von Datenbank-Triggern auf PROVIDER gepflegt und nur gelesen.
+ */
+@NamedQuery(
+        name = "AddressTrigram.findProviderIds",
+        query = "select t.providerId from AddressTrigram t " +
+                " where t.trigram in :trigrams " +
+                " group by t.providerId " +
+                " having count(t.trigram) = :trigramCount")
+
+@Entity
+@Cacheable(false)
+@IdClass(AddressTrigram.Key.class)
+@Table(name = "ADDRESS_TRIGRAM")
+public class AddressTrigram {
+    @Id
+    @Column(name = "TRIGRAM", length = 12)
+    private String trigram;
+    @Id
+    @Column(name = "PROVIDER_ID")
+    private Integer providerId;
+
+    protected AddressTrigram() {
+    }
+
+    public String getTrigram() {
+        return trigram;
+    }
+
+    public Integer getProviderId() {
+        return providerId;
+    }
+
+    public static class Key implements Serializable {
+        private String trigram;
+        private Integer providerId;
+
+        public Key() {
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(trigram, key.trigram) && Objects.equals(providerId, key.providerId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(trigram, providerId);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Trigramm-Index für die Teilstring-Suche in Provider-Adressen.
+ * <p>Eine Suche nach <code>like '%teil%'</code> kann in Derby keinen Index verwenden. Deshalb wird für jede Adresse
+ * die Menge ihrer Trigramme (alle Teilstrings der Länge 3 in Kleinbuchstaben) in ADDRESS_TRIGRAM gespeichert.
+ * Jeder Provider, dessen Adresse den Suchbegriff enthält, besitzt auch alle Trigramme des Suchbegriffs - über den
+ * Index auf TRIGRAM werden so zuerst die Kandidaten gefunden, das eigentliche LIKE prüft danach nur noch diese.
+ * <p>Gepflegt wird die Tabelle durch Trigger auf PROVIDER, damit sie auch bei Änderungen außerhalb des Repositories
+ * konsistent bleibt. Die Klasse ist nur public, weil Derby die Prozedur {@link #refresh(int, String)} sonst nicht
+ * aufrufen kann.
+ */
+public final class AddressTrigrams {
+
+    /**
+     * Kürzere Suchbegriffe haben keine Trigramme und werden ohne Index gesucht.
+     */
+    static final int MIN_SEARCH_LENGTH = 3;
+
+    private static final String PROCEDURE = "REFRESH_ADDRESS_TRIGRAMS";
+
+    private static final String[] TRIGGERS = {
+            "PROVIDER_TRIGRAMS_INSERT", "PROVIDER_TRIGRAMS_UPDATE", "PROVIDER_TRIGRAMS_DELETE"
+    };
+
+    private static final String[] DDL = {
+            "CREATE PROCEDURE " + PROCEDURE + "(IN PROVIDER_ID INTEGER, IN ADDRESS VARCHAR(32672)) " +
+                    "LANGUAGE JAVA PARAMETER STYLE JAVA MODIFIES SQL DATA " +
+                    "EXTERNAL NAME '" + AddressTrigrams.class.getName() + ".refresh'",
+            "CREATE TRIGGER PROVIDER_TRIGRAMS_INSERT AFTER INSERT ON PROVIDER " +
+                    "REFERENCING NEW AS N FOR EACH ROW CALL " + PROCEDURE + "(N.ID, N.ADDRESS)",
+            "CREATE TRIGGER PROVIDER_TRIGRAMS_UPDATE AFTER UPDATE OF ADDRESS ON PROVIDER " +
+                    "REFERENCING NEW AS N FOR EACH ROW CALL " + PROCEDURE + "(N.ID, N.ADDRESS)",
+            "CREATE TRIGGER PROVIDER_TRIGRAMS_DELETE AFTER DELETE ON PROVIDER " +
+                    "REFERENCING OLD AS O FOR EACH ROW DELETE FROM ADDRESS_TRIGRAM WHERE PROVIDER_ID = O.ID"
+    };
+
+    private AddressTrigrams() {
+    }
+
+    /**
+     * Liefert alle Trigramme eines Textes. Der Text wird am Ende mit zwei Leerzeichen aufgefüllt, damit auch
+     * die letzten Zeichen am Anfang eines Trigramms stehen.
+     */
+    static Set<String> of(String address) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (address == null)
+            return trigrams;
+        String padded = normalize(address) + "  ";
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Liefert die Trigramme, die jede Adresse enthalten muss, in der <code>part</code> vorkommt, oder eine leere Menge,
+     * falls <code>part</code> dafür zu kurz ist oder LIKE-Platzhalter enthält.
+     */
+    static Set<String> ofSearch(String part) {
+        Set<String> trigrams = new LinkedHashSet<>();
+        if (part == null || part.indexOf('%') >= 0 || part.indexOf('_') >= 0)
+            return trigrams;
+        String normalized = normalize(part);
+        for (int i = 0; i + 3 <= normalized.length(); i++) {
+            trigrams.add(normalized.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Wird von den Triggern auf PROVIDER als Java-Prozedur aufgerufen und ersetzt die Trigramme eines Providers.
+     */
+    public static void refresh(int providerId, String address) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:default:connection")) {
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM ADDRESS_TRIGRAM WHERE PROVIDER_ID = ?")) {
+                delete.setInt(1, providerId);
+                delete.executeUpdate();
+            }
+            Set<String> trigrams = of(address);
+            if (trigrams.isEmpty())
+                return;
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO ADDRESS_TRIGRAM (TRIGRAM, PROVIDER_ID) VALUES (?, ?)")) {
+                for (String trigram : trigrams) {
+                    insert.setString(1, trigram);
+                    insert.setInt(2, providerId);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Legt Prozedur und Trigger an, soweit sie noch fehlen, und trägt die Trigramme aller Provider nach,
+     * die noch keine haben.
+     */
+    static void ensure(EntityManagerFactory factory) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            try (Statement statement = connection.createStatement()) {
+                if (!exists(connection, "SELECT 1 FROM SYS.SYSALIASES WHERE ALIAS = '" + PROCEDURE + "'")) {
+                    statement.executeUpdate(DDL[0]);
+                }
+                for (int i = 0; i < TRIGGERS.length; i++) {
+                    if (!triggerExists(connection, TRIGGERS[i]))
+                        statement.executeUpdate(DDL[i + 1]);
+                }
+            }
+            backfill(connection);
+            manager.getTransaction().commit();
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot create address trigram index", e);
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+            manager.close();
+        }
+    }
+
+    private static void backfill(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT ID, ADDRESS FROM PROVIDER P WHERE ADDRESS IS NOT NULL " +
+                     "AND NOT EXISTS (SELECT 1 FROM ADDRESS_TRIGRAM T WHERE T.PROVIDER_ID = P.ID)");
+             PreparedStatement insert = connection.prepareStatement(
+                     "INSERT INTO ADDRESS_TRIGRAM (TRIGRAM, PROVIDER_ID) VALUES (?, ?)")) {
+            while (rs.next()) {
+                for (String trigram : of(rs.getString(2))) {
+                    insert.setString(1, trigram);
+                    insert.setInt(2, rs.getInt(1));
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    /**
+     * @return <code>true</code> falls Prozedur und alle Trigger vorhanden sind.
+     */
+    static boolean isInstalled(Connection connection) throws SQLException {
+        if (!exists(connection, "SELECT 1 FROM SYS.SYSALIASES WHERE ALIAS = '" + PROCEDURE + "'"))
+            return false;
+        for (String trigger : TRIGGERS) {
+            if (!triggerExists(connection, trigger))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean triggerExists(Connection connection, String trigger) throws SQLException {
+        return exists(connection, "SELECT 1 FROM SYS.SYSTRIGGERS WHERE TRIGGERNAME = '" + trigger + "'");
+    }
+
+    private static boolean exists(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next();
+        }
+    }
+}
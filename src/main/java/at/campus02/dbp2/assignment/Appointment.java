@@ -1,23 +1,119 @@
 package at.campus02.dbp2.assignment;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+
 import javax.persistence.*;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
+@NamedQuery(
+        name = "Appointment.findFreeAt",
+        query = "select a from Appointment a " +
+                " where lower(a.provider.address) like lower(:addressPart) " +
+                " and a.customer is null")
+@NamedQuery(
+        name = "Appointment.findFreeAtCandidates",
+        query = "select a from Appointment a " +
+                " where a.provider.id in :providerIds " +
+                " and lower(a.provider.address) like lower(:addressPart) " +
+                " and a.customer is null")
+@NamedQuery(
+        name = "Appointment.findFreeBetween",
+        query = "select a from Appointment a " +
+                " where a.customer is null and a.time >= :from and a.time <= :to")
+@NamedQuery(
+        name = "Appointment.findFreeBetweenAfter",
+        query = "select a from Appointment a " +
+                " where a.customer is null and a.time >= :after and a.time <= :to " +
+                " and (a.time > :after or a.id > :afterId) " +
+                " order by a.time, a.id")
+@NamedQuery(
+        name = "Appointment.findFreeSlotsAt",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where lower(p.address) like lower(:addressPart) " +
+                " and a.customer is null " +
+                " order by a.time, a.id")
+@NamedQuery(
+        name = "Appointment.findFreeSlotsAtCandidates",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where p.id in :providerIds " +
+                " and lower(p.address) like lower(:addressPart) " +
+                " and a.customer is null " +
+                " order by a.time, a.id")
+@NamedQuery(
+        name = "Appointment.findFreeSlotsBetween",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where a.customer is null and a.time >= :from and a.time <= :to " +
+                " order by a.time, a.id")
+@NamedQuery(
+        name = "Appointment.findAllFreeSlots",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where a.customer is null")
+@NamedQuery(
+        name = "Appointment.findFreeSlotsOfProviders",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where p.id in :providerIds and a.customer is null")
+@NamedQuery(
+        name = "Appointment.findFreeSlotsOfType",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where p.type = :type and a.customer is null")
+@NamedQuery(
+        name = "Appointment.findSlotById",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where a.id = :id")
+@NamedQuery(
+        name = "Appointment.findSlotsByCustomers",
+        query = "select new at.campus02.dbp2.assignment.AppointmentSlot(a.id, a.time, p.id, p.type, p.address) " +
+                " from Appointment a join a.provider p " +
+                " where a.customer.email in :emails")
+@NamedQuery(
+        name = "Appointment.findByCustomer",
+        query = "select a from Appointment a " +
+                " where a.customer.email = :email")
+
+// Fetch-Pläne der Finder, siehe FetchPlan
+@NamedEntityGraph(name = "slot-only")
+@NamedEntityGraph(name = "slot-with-provider",
+        attributeNodes = @NamedAttributeNode("provider"))
+@NamedEntityGraph(name = "booking",
+        attributeNodes = {@NamedAttributeNode("provider"), @NamedAttributeNode("customer")})
+
 @Entity
+@Cacheable
+// reserve und cancel ändern Appointments am Cache vorbei und entfernen sie danach einzeln aus dem Cache
+@Cache(type = CacheType.SOFT_WEAK, size = 10000, expiry = 300000)
 public class Appointment {
-    @Id @GeneratedValue
+    @Id @GeneratedValue(strategy = GenerationType.TABLE, generator = "AppointmentIds")
+    @TableGenerator(name = "AppointmentIds", allocationSize = 1000)
     private Integer id;
-    @ManyToOne  //OneToOne @JoinColumn(name = "CUSTOMER_EMAIL")
+    @ManyToOne(fetch = FetchType.LAZY)  //OneToOne @JoinColumn(name = "CUSTOMER_EMAIL")
     private Customer customer;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     private Provider provider;
     private LocalDateTime time;
+    @Version
+    private int version;
 
     public Integer getId() {
         return id;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
+    void setVersion(int version) {
+        this.version = version;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -47,12 +143,13 @@ public class Appointment {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Appointment that = (Appointment) o;
-        return Objects.equals(getId(), that.getId()) && Objects.equals(getTime(), that.getTime()) && Objects.equals(getCustomer(), that.getCustomer()) && Objects.equals(getProvider(), that.getProvider());
+        // wie hashCode ohne Customer und Provider, damit der Vergleich keine Lazy-Beziehungen lädt
+        return Objects.equals(getId(), that.getId()) && Objects.equals(getTime(), that.getTime());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(getId(), getTime(), getCustomer(), getProvider());
+        return Objects.hash(getId(), getTime());
     }
 
 }
@@ -0,0 +1,75 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Eine Seite von freien Appointments, siehe {@link AppointmentRepository#findAppointments(LocalDateTime, LocalDateTime, int, Token)}.
+ */
+public final class AppointmentPage {
+
+    /**
+     * Position nach dem letzten Appointment einer Seite, bestehend aus Zeitpunkt und ID.
+     * Die nächste Seite beginnt beim ersten Appointment, das in der Reihenfolge (time, id) danach kommt.
+     */
+    public static final class Token {
+        private final LocalDateTime time;
+        private final int id;
+
+        public Token(LocalDateTime time, int id) {
+            this.time = Objects.requireNonNull(time);
+            this.id = id;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Token token = (Token) o;
+            return id == token.id && time.equals(token.time);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, id);
+        }
+
+        @Override
+        public String toString() {
+            return time + "/" + id;
+        }
+    }
+
+    private final List<Appointment> appointments;
+    private final Token next;
+
+    AppointmentPage(List<Appointment> appointments, Token next) {
+        this.appointments = Collections.unmodifiableList(appointments);
+        this.next = next;
+    }
+
+    public List<Appointment> getAppointments() {
+        return appointments;
+    }
+
+    /**
+     * @return das Token für die nächste Seite oder <code>null</code>, falls dies die letzte Seite ist.
+     */
+    public Token getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
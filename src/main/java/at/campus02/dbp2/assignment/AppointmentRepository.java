@@ -1,7 +1,10 @@
 package at.campus02.dbp2.assignment;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Stream;
 
 public interface AppointmentRepository {
 
@@ -54,6 +57,19 @@ public interface AppointmentRepository {
      */
     boolean delete(Customer customer);
 
+    /**
+     * Löscht alle Customer mit den angegebenen Emails aus der Datenbank (z.B. für Lösch-Jobs nach DSGVO).
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> passiert nichts und <code>0</code> wird zurückgegeben.
+     *   <li> Emails, die <code>null</code> sind oder zu keinem Customer gehören, werden ignoriert.
+     *   <li> Alle Reservierungen der gelöschten Customer werden aufgehoben, die Appointments bleiben bestehen.
+     *   <li> Alles passiert in einer Transaktion - entweder werden alle Customer gelöscht oder keiner.
+     * </ul>
+     * @param emails die Emails der zu löschenden Customer.
+     * @return Anzahl der durch diese Aktion gelöschten Customer.
+     */
+    int deleteCustomers(Collection<String> emails);
+
     /**
      * Erzeugt den übergebenen Provider in der Datenbank.
      * <p>Bedingungen: <ul>
@@ -67,6 +83,32 @@ public interface AppointmentRepository {
      */
     boolean create(Provider provider);
 
+    /**
+     * Erzeugt alle übergebenen Provider samt ihren Appointments in einer Transaktion (Bulk-Import).
+     * Entspricht {@link #createAll(Collection, int)} mit der Standard-Blockgröße.
+     * @param providers die zu persistierenden Provider
+     * @return Anzahl der durch diese Aktion in der DB erzeugten Provider.
+     */
+    int createAll(Collection<Provider> providers);
+
+    /**
+     * Erzeugt alle übergebenen Provider samt ihren Appointments in einer Transaktion (Bulk-Import).
+     * <p>Bedingungen: <ul>
+     *   <li> Bei Parameter <code>null</code> passiert nichts und <code>0</code> wird zurückgegeben.
+     *   <li> Provider, die <code>null</code> sind oder bereits eine ID haben, werden übersprungen.
+     *   <li> Nach je <code>batchSize</code> neuen Entities (Provider und Appointments) wird der Persistence Context
+     *        geschrieben und geleert, das begrenzt den Speicherbedarf großer Importe.
+     *   <li> Die Inserts gehen dabei als JDBC-Batches an die Datenbank. Deren Größe legt
+     *        <code>eclipselink.jdbc.batch-writing.size</code> in der Persistence Unit fest, nicht <code>batchSize</code>.
+     *   <li> Nach erfolgreichem Persistieren haben alle Provider und Appointments eine ID.
+     * </ul>
+     * @param providers die zu persistierenden Provider
+     * @param batchSize Anzahl Entities, nach der geschrieben und der Persistence Context geleert wird.
+     * @return Anzahl der durch diese Aktion in der DB erzeugten Provider.
+     * @throws IllegalArgumentException falls <code>batchSize</code> kleiner als 1 ist.
+     */
+    int createAll(Collection<Provider> providers, int batchSize);
+
     /**
      * Liest den Provider mit der angegebenen ID aus der Datenbank.
      * <p>Bedingungen: <ul>
@@ -86,6 +128,8 @@ public interface AppointmentRepository {
      *   <li> Ansonsten wird der Provider in die Datenbank übernommen und zurückgegeben.
      *   <li> Appointments, die nicht mehr zu diesem Provider gehören, werden in der Datenbank ebenfalls gelöscht.
      *   <li> Appointments, die noch nicht in der Datenbank existieren, werden persistiert.
+     *   <li> Hat ein Appointment eine ID, die nicht zu diesem Provider gehört, wird eine
+     *        <code>IllegalArgumentException</code> geworfen und nichts geändert.
      * </ul>
      * @param provider der zu speichernde Provider.
      * @return der aktuelle Zustand dieses Providers oder <code>null</code>, falls der Provider nicht übertragen wurde.
@@ -122,6 +166,21 @@ public interface AppointmentRepository {
      */
     List<Customer> findCustomersBy(String lastname, String firstname);
 
+    /**
+     * Findet alle Customer, deren Vor- bzw. Nachname dem Suchbegriff entsprechend <code>mode</code> entspricht.
+     * <p>Bedingungen: <ul>
+     *   <li> Es gelten dieselben Bedingungen wie für {@link #findCustomersBy(String, String)}.
+     *   <li> Die Suche ist immer case-insensitive, <code>%</code> und <code>_</code> werden nicht als Platzhalter behandelt.
+     *   <li> Bei <code>MatchMode.EXACT</code> und <code>MatchMode.PREFIX</code> wird ein Index verwendet.
+     *   <li> Wird als <code>mode</code> <code>null</code> übergeben, wird <code>MatchMode.CONTAINS</code> verwendet.
+     * </ul>
+     * @param lastname Nachname des zu suchenden Customer (required).
+     * @param firstname Vorname des zu suchenden Customer (oder <code>null</code>, falls nicht nach Vorname gesucht werden soll).
+     * @param mode wie die Namen verglichen werden.
+     * @return Liste der gefundenen Customers, sortiert nach Nachname.
+     */
+    List<Customer> findCustomersBy(String lastname, String firstname, MatchMode mode);
+
     /**
      * Findet alle Provider mit angegebenem ProviderType und einer Adresse, die dem angegebenen addressPart entspricht.
      * <p>Bedingungen: <ul>
@@ -148,6 +207,20 @@ public interface AppointmentRepository {
      */
     List<Appointment> findAppointmentsAt(String addressPart);
 
+    /**
+     * Wie {@link #findAppointmentsAt(String)}, lädt aber nur die Beziehungen, die der {@link FetchPlan} vorsieht,
+     * in derselben Abfrage wie die Appointments.
+     * <p>Bedingungen: <ul>
+     *   <li> Es gelten dieselben Bedingungen wie für {@link #findAppointmentsAt(String)}.</li>
+     *   <li> Wird als <code>plan</code> <code>null</code> übergeben, wird <code>FetchPlan.SLOT_WITH_PROVIDER</code>
+     *        verwendet.</li>
+     * </ul>
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @param plan welche Beziehungen mitgeladen werden.
+     * @return Liste der gefundenen buchbaren Appointments.
+     */
+    List<Appointment> findAppointmentsAt(String addressPart, FetchPlan plan);
+
     /**
      * Findet alle noch verfügbaren Appointments bei Providern, deren Adresse den "addressPart" enthält.
      * <p>Bedingungen: <ul>
@@ -164,6 +237,186 @@ public interface AppointmentRepository {
      */
     List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to);
 
+    /**
+     * Wie {@link #findAppointments(LocalDateTime, LocalDateTime)}, lädt aber nur die Beziehungen, die der
+     * {@link FetchPlan} vorsieht.
+     * <p>Bedingungen: <ul>
+     *   <li> Es gelten dieselben Bedingungen wie für {@link #findAppointments(LocalDateTime, LocalDateTime)}.</li>
+     *   <li> Die Beziehungen des Plans werden in derselben Abfrage wie die Appointments gelesen.</li>
+     *   <li> Wird als <code>plan</code> <code>null</code> übergeben, wird <code>FetchPlan.SLOT_WITH_PROVIDER</code>
+     *        verwendet.</li>
+     * </ul>
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param plan welche Beziehungen mitgeladen werden.
+     * @return Liste der gefundenen buchbaren Appointments.
+     */
+    List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, FetchPlan plan);
+
+    /**
+     * Findet seitenweise alle noch verfügbaren Appointments zwischen <code>from</code> und <code>to</code>,
+     * sortiert nach Zeitpunkt und ID.
+     * <p>Bedingungen: <ul>
+     *   <li> Für <code>from</code> und <code>to</code> gelten dieselben Bedingungen wie für
+     *        {@link #findAppointments(LocalDateTime, LocalDateTime)}.</li>
+     *   <li> Wird als <code>after</code> <code>null</code> übergeben, wird die erste Seite geliefert, ansonsten die Seite
+     *        nach dem Token der vorherigen Seite.</li>
+     *   <li> Die Seiten werden über (time, id) und nicht über einen Offset gesucht, die Dauer einer Abfrage hängt daher
+     *        nicht davon ab, wie weit vorne die Seite liegt.</li>
+     * </ul>
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param pageSize maximale Anzahl an Appointments pro Seite.
+     * @param after Token der vorherigen Seite (oder <code>null</code> für die erste Seite).
+     * @return die gefundene Seite, deren Token auf die nächste Seite verweist.
+     * @throws IllegalArgumentException falls <code>pageSize</code> nicht zwischen 1 und 1000 liegt.
+     */
+    AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after);
+
+    /**
+     * Wie {@link #findAppointments(LocalDateTime, LocalDateTime, int, AppointmentPage.Token)}, lädt aber nur die
+     * Beziehungen, die der {@link FetchPlan} vorsieht (siehe {@link #findAppointments(LocalDateTime, LocalDateTime, FetchPlan)}).
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param pageSize maximale Anzahl an Appointments pro Seite.
+     * @param after Token der vorherigen Seite (oder <code>null</code> für die erste Seite).
+     * @param plan welche Beziehungen mitgeladen werden.
+     * @return die gefundene Seite, deren Token auf die nächste Seite verweist.
+     * @throws IllegalArgumentException falls <code>pageSize</code> nicht zwischen 1 und 1000 liegt.
+     */
+    AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after,
+                                     FetchPlan plan);
+
+    /**
+     * Wie {@link #findAppointmentsAt(String)}, liefert aber nur die für die Terminauswahl nötigen Daten.
+     * Die Ergebnisse werden nicht als Entities geladen und sind nach Zeitpunkt sortiert.
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @return Liste der gefundenen buchbaren Termine.
+     */
+    List<AppointmentSlot> findSlotsAt(String addressPart);
+
+    /**
+     * Wie {@link #findAppointments(LocalDateTime, LocalDateTime)}, liefert aber nur die für die Terminauswahl nötigen Daten.
+     * Die Ergebnisse werden nicht als Entities geladen und sind nach Zeitpunkt sortiert.
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @return Liste der gefundenen buchbaren Termine.
+     */
+    List<AppointmentSlot> findSlots(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Findet alle freien Termine eines Providers zwischen <code>from</code> und <code>to</code>, sortiert nach Zeitpunkt.
+     * <p>Bedingungen: <ul>
+     *   <li> Für <code>from</code> und <code>to</code> gelten dieselben Bedingungen wie für
+     *        {@link #findAppointments(LocalDateTime, LocalDateTime)}.</li>
+     *   <li> Wird als <code>providerId</code> <code>null</code> übergeben, wird eine leere Liste zurückgegeben.</li>
+     *   <li> Die Abfrage wird aus einem Index im Speicher beantwortet, der durch die Methoden dieses Repositories
+     *        aktuell gehalten wird - Änderungen an der Datenbank an diesem Repository vorbei sind nicht sichtbar.</li>
+     * </ul>
+     * @param providerId ID des Providers.
+     * @param from Zeitpunkt, ab dem Termine gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Termine gesucht werden sollen (oder <code>null</code>).
+     * @return Liste der gefundenen buchbaren Termine.
+     */
+    List<AppointmentSlot> findFreeSlotsByProvider(Integer providerId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Wie {@link #findFreeSlotsByProvider(Integer, LocalDateTime, LocalDateTime)}, aber für alle Provider eines Typs.
+     * @param type ProviderType der Provider (bei <code>null</code> wird eine leere Liste zurückgegeben).
+     * @param from Zeitpunkt, ab dem Termine gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Termine gesucht werden sollen (oder <code>null</code>).
+     * @return Liste der gefundenen buchbaren Termine, sortiert nach Zeitpunkt.
+     */
+    List<AppointmentSlot> findFreeSlotsByType(ProviderType type, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Liefert den Belegungskalender, der wie der Index von
+     * {@link #findFreeSlotsByProvider(Integer, LocalDateTime, LocalDateTime)} aktuell gehalten wird.
+     * @return der Kalender, oder <code>null</code> falls in der Persistence Unit keine Datei dafür konfiguriert ist.
+     */
+    OccupancyCalendar getOccupancyCalendar();
+
+    /**
+     * Liefert alle noch verfügbaren Appointments zwischen <code>from</code> und <code>to</code> als Stream,
+     * sortiert nach Zeitpunkt und ID.
+     * <p>Bedingungen: <ul>
+     *   <li> Für <code>from</code> und <code>to</code> gelten dieselben Bedingungen wie für
+     *        {@link #findAppointments(LocalDateTime, LocalDateTime)}.</li>
+     *   <li> Die Appointments werden blockweise mit <code>fetchSize</code> Zeilen aus der Datenbank gelesen,
+     *        bereits gelesene Blöcke werden wieder freigegeben.</li>
+     *   <li> Der Stream hält eine Datenbankverbindung offen und muss daher geschlossen werden (try-with-resources).</li>
+     * </ul>
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param fetchSize Anzahl an Zeilen, die auf einmal gelesen werden.
+     * @return Stream der gefundenen buchbaren Appointments.
+     * @throws IllegalArgumentException falls <code>fetchSize</code> kleiner als 1 ist.
+     */
+    Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to, int fetchSize);
+
+    /**
+     * Liefert alle Customer, sortiert nach Email, als Stream.
+     * Es gelten dieselben Bedingungen bezüglich <code>fetchSize</code> und Schließen wie für
+     * {@link #streamAppointments(LocalDateTime, LocalDateTime, int)}.
+     * @param fetchSize Anzahl an Zeilen, die auf einmal gelesen werden.
+     * @return Stream aller Customer.
+     * @throws IllegalArgumentException falls <code>fetchSize</code> kleiner als 1 ist.
+     */
+    Stream<Customer> streamCustomers(int fetchSize);
+
+    /**
+     * Liefert alle Customer mit angegebenem Vor- bzw. Nachnamen als Stream.
+     * Es gelten dieselben Bedingungen wie für {@link #findCustomersBy(String, String, MatchMode)} und
+     * bezüglich <code>fetchSize</code> und Schließen wie für {@link #streamAppointments(LocalDateTime, LocalDateTime, int)}.
+     * @param lastname Nachname des zu suchenden Customer (required).
+     * @param firstname Vorname des zu suchenden Customer (oder <code>null</code>).
+     * @param mode wie die Namen verglichen werden.
+     * @param fetchSize Anzahl an Zeilen, die auf einmal gelesen werden.
+     * @return Stream der gefundenen Customers, sortiert nach Nachname.
+     * @throws IllegalArgumentException falls <code>lastname</code> fehlt oder <code>fetchSize</code> kleiner als 1 ist.
+     */
+    Stream<Customer> streamCustomersBy(String lastname, String firstname, MatchMode mode, int fetchSize);
+
+    /**
+     * Liefert dieselben Appointments wie {@link #findAppointments(LocalDateTime, LocalDateTime)} als Publisher.
+     * <p>Bedingungen: <ul>
+     *   <li> Jeder Subscriber bekommt einen eigenen Datenbank-Cursor, der beim ersten <code>request</code> geöffnet und
+     *        nach dem letzten Element, einem Fehler oder <code>cancel</code> wieder geschlossen wird.</li>
+     *   <li> Es werden immer nur so viele Zeilen gelesen, wie der Subscriber angefordert hat (blockweise, höchstens
+     *        1000 auf einmal) - die Elemente werden in dem Thread geliefert, der <code>request</code> aufruft.</li>
+     *   <li> Ein Subscriber, der nicht mehr weiterliest, muss <code>cancel</code> aufrufen, um die Verbindung freizugeben.</li>
+     * </ul>
+     * @param from Zeitpunkt, ab dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @param to Zeitpunkt, bis zu dem Appointments gesucht werden sollen (oder <code>null</code>).
+     * @return Publisher der gefundenen buchbaren Appointments.
+     */
+    Flow.Publisher<Appointment> publishAppointments(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Liefert dieselben Appointments wie {@link #findAppointmentsAt(String)} als Publisher, siehe
+     * {@link #publishAppointments(LocalDateTime, LocalDateTime)}.
+     * @param addressPart Teil der Adresse des Providers, bei dem der Termin verfügbar ist.
+     * @return Publisher der gefundenen buchbaren Appointments.
+     */
+    Flow.Publisher<Appointment> publishAppointmentsAt(String addressPart);
+
+    /**
+     * Liefert dieselben Provider wie {@link #findProvidersBy(ProviderType, String)} als Publisher, siehe
+     * {@link #publishAppointments(LocalDateTime, LocalDateTime)}.
+     * @param type ProviderType des zu suchenden Providers.
+     * @param addressPart Teil der Adresse des zu suchenden Providers.
+     * @return Publisher der gefundenen Provider.
+     */
+    Flow.Publisher<Provider> publishProvidersBy(ProviderType type, String addressPart);
+
+    /**
+     * Liefert dieselben Appointments wie {@link #getAppointmentsFor(Customer)} als Publisher, siehe
+     * {@link #publishAppointments(LocalDateTime, LocalDateTime)}.
+     * @param customer der Customer, dessen gebuchte Appointments gefunden werden sollen.
+     * @return Publisher der gebuchten Appointments des Customers.
+     */
+    Flow.Publisher<Appointment> publishAppointmentsFor(Customer customer);
+
     /**
      * Findet alle Appointments (von allen Providern), die von einem bestimmten Customer gebucht wurden.
      * <p>Bedingungen: <ul>
@@ -175,6 +428,19 @@ public interface AppointmentRepository {
      */
     List<Appointment> getAppointmentsFor(Customer customer);
 
+    /**
+     * Wie {@link #getAppointmentsFor(Customer)}, lädt aber nur die Beziehungen, die der {@link FetchPlan} vorsieht,
+     * in derselben Abfrage wie die Appointments.
+     * <p>Bedingungen: <ul>
+     *   <li> Es gelten dieselben Bedingungen wie für {@link #getAppointmentsFor(Customer)}.</li>
+     *   <li> Wird als <code>plan</code> <code>null</code> übergeben, wird <code>FetchPlan.BOOKING</code> verwendet.</li>
+     * </ul>
+     * @param customer der Customer, dessen gebuchte Appointments gefunden werden sollen.
+     * @param plan welche Beziehungen mitgeladen werden.
+     * @return Liste der gebuchten Appointments des Customers
+     */
+    List<Appointment> getAppointmentsFor(Customer customer, FetchPlan plan);
+
     /**
      * Reserviert ein freies Appointment für einen Customer.
      * <p>Bedingungen: <ul>
@@ -209,6 +475,12 @@ public interface AppointmentRepository {
      */
     boolean cancel(Appointment appointment, Customer customer);
 
+    /**
+     * Liefert die Hit- und Miss-Zähler des Shared Cache für die Schlüsselzugriffe auf Customer und Provider.
+     * @return die Zähler dieses Repositories.
+     */
+    CacheStatistics getCacheStatistics();
+
     /**
      * Sollte alle Ressourcen schließen, die intern erzeugt und verwendet wurden - normalerweise den EntityManager.
      */
@@ -1,37 +1,304 @@
 package at.campus02.dbp2.assignment;
 
+import org.eclipse.persistence.config.CacheUsage;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaCache;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.SessionLog;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Flow;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class AppointmentRepositoryFactory implements AppointmentRepository {
 
-    private final EntityManager manager;
+    static final int DEFAULT_BATCH_SIZE = 1000;
+    static final String OCCUPANCY_FILE = "at.campus02.dbp2.occupancy.file";
+    static final String OCCUPANCY_FIRST_DAY = "at.campus02.dbp2.occupancy.first-day";
+    static final String OCCUPANCY_DAYS = "at.campus02.dbp2.occupancy.days";
+    static final String OCCUPANCY_PROVIDERS = "at.campus02.dbp2.occupancy.providers";
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private final EntityManagerFactory factory;
+    private final CacheStatistics cacheStatistics = new CacheStatistics();
+    private final OccupancyCalendar calendar;
+    private final AvailabilityIndex availability;
     public static AppointmentRepositoryFactory repository;
     private AppointmentRepositoryFactory(EntityManagerFactory factory) {
-        manager = factory.createEntityManager();
+        this.factory = factory;
+        this.calendar = openCalendar(factory);
+        this.availability = new AvailabilityIndex(calendar, message -> ((AbstractSession) JpaHelper.getDatabaseSession(factory))
+                .log(SessionLog.WARNING, SessionLog.PROPERTIES, message, null, null, false));
+        if (calendar != null && calendar.isRestored()) {
+            availability.loadOnDemand(new AvailabilityLoader());
+        } else {
+            loadAvailability();
+        }
+        if (calendar != null)
+            calendar.force();
+    }
+
+    /**
+     * Öffnet den {@link OccupancyCalendar}, falls in der Persistence Unit eine Datei dafür konfiguriert ist
+     * (<code>at.campus02.dbp2.occupancy.file</code>, ohne oder mit leerem Dateinamen gibt es keinen Kalender).
+     * Ein aus einem früheren Prozess übernommener Kalender wird nur behalten, wenn seine freien Viertelstunden
+     * genau mit der Datenbank übereinstimmen - sonst wird er geleert und beim Laden des
+     * {@link AvailabilityIndex} neu befüllt. Ein behaltener Kalender erspart das Laden beim Start: der Index liest die
+     * freien Appointments eines Providers erst beim ersten Zugriff.
+     */
+    private static OccupancyCalendar openCalendar(EntityManagerFactory factory) {
+        Map<String, Object> properties = factory.getProperties();
+        Object file = properties.get(OCCUPANCY_FILE);
+        if (file == null || String.valueOf(file).isEmpty())
+            return null;
+        LocalDate firstDay = LocalDate.parse(String.valueOf(properties.getOrDefault(OCCUPANCY_FIRST_DAY, "2021-01-01")));
+        int days = Integer.parseInt(String.valueOf(properties.getOrDefault(OCCUPANCY_DAYS, "1096")));
+        int providers = Integer.parseInt(String.valueOf(properties.getOrDefault(OCCUPANCY_PROVIDERS, "4096")));
+        OccupancyCalendar calendar = OccupancyCalendar.open(Paths.get(String.valueOf(file)), firstDay, days, providers);
+
+        if (calendar.isRestored() && !matchesDatabase(factory, calendar, firstDay, days, providers))
+            calendar.clear();
+        return calendar;
+    }
+
+    /**
+     * Vergleicht einen übernommenen Kalender Viertelstunde für Viertelstunde mit der Datenbank: jede Viertelstunde mit
+     * mindestens einem freien Appointment muss gesetzt sein, und es dürfen nicht mehr Bits gesetzt sein. Ein Vergleich
+     * nur der Anzahl übersieht z.B. ein verlorenes Bit nach <code>reserve</code> zusammen mit einem verlorenen Bit nach
+     * <code>cancel</code>.
+     */
+    private static boolean matchesDatabase(EntityManagerFactory factory, OccupancyCalendar calendar, LocalDate firstDay,
+                                           int days, int providers) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            long free = 0;
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT DISTINCT PROVIDER_ID, DATE(TIME), HOUR(TIME), MINUTE(TIME) / " + OccupancyCalendar.SLOT_MINUTES
+                            + " FROM APPOINTMENT WHERE CUSTOMER_EMAIL IS NULL AND TIME >= ? AND TIME < ? AND PROVIDER_ID < ?")) {
+                statement.setTimestamp(1, Timestamp.valueOf(firstDay.atStartOfDay()));
+                statement.setTimestamp(2, Timestamp.valueOf(firstDay.plusDays(days).atStartOfDay()));
+                statement.setInt(3, providers);
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDateTime quarterHour = rs.getDate(2).toLocalDate()
+                                .atTime(rs.getInt(3), rs.getInt(4) * OccupancyCalendar.SLOT_MINUTES);
+                        if (!calendar.isFree(rs.getInt(1), quarterHour))
+                            return false;
+                        free++;
+                    }
+                }
+            }
+            return free == calendar.countSetBits() && free == calendar.freeCount();
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot validate occupancy calendar", e);
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            manager.close();
+        }
     }
 
-    public static AppointmentRepository get(EntityManagerFactory factory) {
-        if (repository == null) {
+    /**
+     * Liefert das Repository für die übergebene EntityManagerFactory.
+     * Das Repository hält selbst keinen EntityManager, sondern erzeugt für jeden Aufruf einen eigenen,
+     * kurzlebigen EntityManager - es kann daher von beliebig vielen Threads gleichzeitig verwendet werden.
+     * Beim ersten Zugriff mit einer neuen Factory wird das Schema geprüft und, falls nötig, ergänzt
+     * (siehe {@link SchemaBootstrap}) und der {@link AvailabilityIndex} aus der Datenbank aufgebaut - nach einem Neustart
+     * mit gültigem {@link OccupancyCalendar} erst beim ersten Zugriff je Provider.
+     */
+    public static synchronized AppointmentRepository get(EntityManagerFactory factory) {
+        if (repository == null || repository.factory != factory) {
+            SchemaBootstrap.ensure(factory);
             repository = new AppointmentRepositoryFactory(factory);
         }
         return repository;
     }
 
+    //-------------------------------Unit of Work---------------------------------------------------
+    private <T> T query(Function<EntityManager, T> work) {
+        for (int attempt = 1; ; attempt++) {
+            EntityManager manager = factory.createEntityManager();
+            try {
+                return work.apply(manager);
+            } catch (PersistenceException e) {
+                // Derby wählt bei Deadlocks zwischen Lesern und Schreibern oft den Leser als Opfer - lesen ist wiederholbar
+                if (attempt >= MAX_READ_ATTEMPTS || !hasSqlState(e, "40001"))
+                    throw e;
+            } finally {
+                manager.close();
+            }
+        }
+    }
+
+    private static boolean hasSqlState(Throwable e, String sqlState) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && sqlState.equals(((SQLException) cause).getSQLState()))
+                return true;
+        }
+        return false;
+    }
+
+    private <T> T transaction(Function<EntityManager, T> work) {
+        EntityManager manager = factory.createEntityManager();
+        EntityTransaction transaction = manager.getTransaction();
+        try {
+            transaction.begin();
+            T result = work.apply(manager);
+            transaction.commit();
+            return result;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+            manager.close();
+        }
+    }
+
+    /**
+     * Wie {@link #transaction(Function)}, für Änderungen, die auch den {@link AvailabilityIndex} betreffen:
+     * <code>work</code> trägt sie in <code>changes</code> ein, angewendet werden sie erst nach dem Commit.
+     * Die Nummer, die ihre Reihenfolge festlegt, bekommen sie nach der letzten Anweisung von <code>work</code>,
+     * solange die geänderten Zeilen noch gesperrt sind.
+     */
+    private <T> T indexedTransaction(BiFunction<EntityManager, AvailabilityIndex.Changes, T> work) {
+        try (AvailabilityIndex.Changes changes = availability.changes()) {
+            T result = transaction(manager -> {
+                T done = work.apply(manager, changes);
+                changes.seal();
+                return done;
+            });
+            changes.apply();
+            return result;
+        }
+    }
+
+    /**
+     * Liest die freien Appointments, die der {@link AvailabilityIndex} erst beim ersten Zugriff lädt.
+     */
+    private final class AvailabilityLoader implements AvailabilityIndex.Loader {
+        @Override
+        public List<AppointmentSlot> freeSlotsOf(int providerId) {
+            return query(manager -> manager.createNamedQuery("Appointment.findFreeSlotsOfProviders", AppointmentSlot.class)
+                    .setParameter("providerIds", Collections.singletonList(providerId))
+                    .getResultList());
+        }
+
+        @Override
+        public List<AppointmentSlot> freeSlotsOf(ProviderType type) {
+            return query(manager -> manager.createNamedQuery("Appointment.findFreeSlotsOfType", AppointmentSlot.class)
+                    .setParameter("type", type)
+                    .getResultList());
+        }
+
+        @Override
+        public Integer providerOf(int appointmentId) {
+            List<AppointmentSlot> slot = query(manager -> manager.createNamedQuery("Appointment.findSlotById", AppointmentSlot.class)
+                    .setParameter("id", appointmentId)
+                    .getResultList());
+            return slot.isEmpty() ? null : slot.get(0).providerId();
+        }
+    }
+
+    /**
+     * Lädt alle freien Appointments in den {@link AvailabilityIndex}.
+     */
+    private void loadAvailability() {
+        availability.clear();
+        try (Stream<AppointmentSlot> slots = stream(manager -> manager.createNamedQuery(
+                "Appointment.findAllFreeSlots", AppointmentSlot.class), AppointmentSlot.class, DEFAULT_BATCH_SIZE)) {
+            slots.forEach(availability::add);
+        }
+    }
+
+    private static void addFree(AvailabilityIndex.Changes changes, Provider provider) {
+        for (Appointment appointment : provider.getAppointments()) {
+            if (appointment.getCustomer() == null) {
+                changes.add(new AppointmentSlot(appointment.getId(), appointment.getTime(),
+                        provider.getId(), provider.getType(), provider.getAddress()));
+            }
+        }
+    }
+
+    /**
+     * Gibt die Appointments der angegebenen Customer frei: <code>release</code> setzt ihren Customer in der Datenbank
+     * auf <code>null</code>, danach werden sie in <code>changes</code> eingetragen.
+     */
+    private static void releaseAppointmentsOf(EntityManager manager, List<String> emails, AvailabilityIndex.Changes changes,
+                                              Runnable release) {
+        List<AppointmentSlot> freed = manager.createNamedQuery("Appointment.findSlotsByCustomers", AppointmentSlot.class)
+                .setParameter("emails", emails)
+                .getResultList();
+        release.run();
+        freed.forEach(changes::add);
+    }
+
+    private <T> Stream<T> stream(Function<EntityManager, TypedQuery<T>> work, Class<T> type, int fetchSize) {
+        EntityManager manager = factory.createEntityManager();
+        TypedQuery<T> query;
+        try {
+            query = work.apply(manager);
+        } catch (RuntimeException e) {
+            manager.close();
+            throw e;
+        }
+        if (query == null) {
+            manager.close();
+            return Stream.empty();
+        }
+        return CursorStreams.of(manager, query, type, fetchSize);
+    }
+
+    private <T> Flow.Publisher<T> publisher(Function<EntityManager, TypedQuery<T>> work, Class<T> type) {
+        return new CursorPublisher<>(fetchSize -> stream(work, type, fetchSize), DEFAULT_BATCH_SIZE);
+    }
+
+    private <T> T find(EntityManager manager, Class<T> type, Object id) {
+        JpaCache cache = factory.getCache().unwrap(JpaCache.class);
+        cacheStatistics.record(type, cache.contains(type, id) && cache.isValid(type, id));
+        return manager.find(type, id);
+    }
+
     //-------------------------------CRUD-----------------------------------------------------------
     @Override
     public boolean create(Customer customer) {
-        if (customer == null || customer.getEmail() == null || read(customer.getEmail()) != null)
+        if (customer == null || customer.getEmail() == null)
             return false;
 
-        manager.getTransaction().begin();
-        manager.persist(customer);
-        manager.getTransaction().commit();
-        return true;
+        return transaction(manager -> {
+            if (find(manager, Customer.class, customer.getEmail()) != null)
+                return false;
+            manager.persist(customer);
+            return true;
+        });
     }
 
     @Override
@@ -39,43 +306,69 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (email == null)
             return null;
 
-        return manager.find(Customer.class, email);
+        return query(manager -> find(manager, Customer.class, email));
     }
 
     @Override
     public Customer update(Customer customer) {
-        if (customer == null)
+        if (customer == null || customer.getEmail() == null)
             return null;
-        if (read(customer.getEmail()) == null) {
-            throw new IllegalArgumentException("Customer does not exist, cannot update!");
-        }
-        manager.getTransaction().begin();
-        Customer managed = manager.merge(customer);
-        manager.getTransaction().commit();
-        return managed;
+
+        return transaction(manager -> {
+            if (find(manager, Customer.class, customer.getEmail()) == null) {
+                throw new IllegalArgumentException("Customer does not exist, cannot update!");
+            }
+            return manager.merge(customer);
+        });
     }
 
     @Override
     public boolean delete(Customer customer) {
-        if (customer == null)
+        if (customer == null || customer.getEmail() == null)
             return false;
 
-        if (read(customer.getEmail()) == null)
-            throw new IllegalArgumentException("Cannot find Customer");
+        return indexedTransaction((manager, changes) -> {
+            Customer managed = find(manager, Customer.class, customer.getEmail());
+            if (managed == null)
+                throw new IllegalArgumentException("Cannot find Customer");
+
+            releaseAppointmentsOf(manager, Collections.singletonList(managed.getEmail()), changes, () ->
+                    manager.createQuery(
+                            "update Appointment a set a.customer = null, a.version = a.version + 1 " +
+                                    "where a.customer = :customer"
+                    ).setParameter("customer", managed).executeUpdate());
+            manager.remove(managed);
+            return true;
+        });
+    }
 
-        List<Appointment> customerAppointments = getAppointmentsFor(customer);
-        for (Appointment a : customerAppointments) {
-            a.setCustomer(null);
-            manager.getTransaction().begin();
-            manager.merge(a);
-            manager.getTransaction().commit();
+    @Override
+    public int deleteCustomers(Collection<String> emails) {
+        if (emails == null)
+            return 0;
+
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(emails));
+        distinct.remove(null);
+        int deleted = indexedTransaction((manager, changes) -> {
+            int count = 0;
+            for (int from = 0; from < distinct.size(); from += DEFAULT_BATCH_SIZE) {
+                List<String> chunk = distinct.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, distinct.size()));
+                releaseAppointmentsOf(manager, chunk, changes, () ->
+                        manager.createQuery(
+                                "update Appointment a set a.customer = null, a.version = a.version + 1 " +
+                                        "where a.customer.email in :emails"
+                        ).setParameter("emails", chunk).executeUpdate());
+                count += manager.createQuery("delete from Customer c where c.email in :emails")
+                        .setParameter("emails", chunk)
+                        .setHint(QueryHints.CACHE_USAGE, CacheUsage.NoCache)
+                        .executeUpdate();
+            }
+            return count;
+        });
+        for (String email : distinct) {
+            factory.getCache().evict(Customer.class, email);
         }
-
-        manager.getTransaction().begin();
-        manager.remove(manager.merge(customer));
-        manager.getTransaction().commit();
-
-        return true;
+        return deleted;
     }
 
     @Override
@@ -85,23 +378,60 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (provider.getId() != null) {
             return false;
         }
-        manager.getTransaction().begin();
-        manager.persist(provider);
+        return indexedTransaction((manager, changes) -> {
+            manager.persist(provider);
 
-        for (Appointment appointment : provider.getAppointments()) {
-            appointment.setProvider(provider);
-            manager.persist(appointment);
-        }
+            for (Appointment appointment : provider.getAppointments()) {
+                appointment.setProvider(provider);
+                manager.persist(appointment);
+            }
+            addFree(changes, provider);
+            return true;
+        });
+    }
 
-        manager.getTransaction().commit();
-        return true;
+    @Override
+    public int createAll(Collection<Provider> providers) {
+        return createAll(providers, DEFAULT_BATCH_SIZE);
+    }
+
+    @Override
+    public int createAll(Collection<Provider> providers, int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        if (providers == null)
+            return 0;
+
+        List<Provider> newProviders = new ArrayList<>(providers.size());
+        for (Provider provider : providers) {
+            if (provider != null && provider.getId() == null)
+                newProviders.add(provider);
+        }
+        return indexedTransaction((manager, changes) -> {
+            int pending = 0;
+            for (Provider provider : newProviders) {
+                manager.persist(provider);
+                for (Appointment appointment : provider.getAppointments()) {
+                    appointment.setProvider(provider);
+                    manager.persist(appointment);
+                }
+                addFree(changes, provider);
+                pending += provider.getAppointments().size() + 1;
+                if (pending >= batchSize) {
+                    manager.flush();
+                    manager.clear();
+                    pending = 0;
+                }
+            }
+            return newProviders.size();
+        });
     }
 
     @Override
     public Provider read(Integer id) {
         if (id == null)
             return null;
-        return manager.find(Provider.class, id);
+        return query(manager -> find(manager, Provider.class, id));
     }
 
     @Override
@@ -109,28 +439,57 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (provider == null) {
             return null;
         }
-        if (provider.getId() == null || read(provider.getId()) == null) {
+        if (provider.getId() == null) {
             throw new IllegalArgumentException("Provider does not exist, cannot update!");
         }
-        manager.getTransaction().begin();
-        List<Appointment> appListUpdated = provider.getAppointments();
-        for (int i = 0; i < appListUpdated.size() - 1; i++) {
-            for (int j = i + 1; j < appListUpdated.size(); j++) {
-                if (appListUpdated.get(i) == appListUpdated.get(j))
-                    appListUpdated.remove(appListUpdated.get(j));
+        return indexedTransaction((manager, changes) -> {
+            Provider managed = find(manager, Provider.class, provider.getId());
+            if (managed == null) {
+                throw new IllegalArgumentException("Provider does not exist, cannot update!");
             }
-        }
-        for (Appointment a : appListUpdated) {
-            List<Appointment> appListDB = read(provider.getId()).getAppointments();
-            if (!appListDB.contains(a)) {
-                manager.persist(a);
+            // sperrt die Appointments des Providers vor dem Lesen, damit kein reserve/cancel dazwischen kommt
+            Map<Integer, Appointment> stored = new HashMap<>();
+            for (Appointment a : manager.createQuery(
+                    "select a from Appointment a where a.provider = :provider", Appointment.class)
+                    .setParameter("provider", managed)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getResultList()) {
+                stored.put(a.getId(), a);
             }
-        }
-        manager.clear();
-        Provider managed = manager.merge(provider);
-        manager.getTransaction().commit();
-
-        return managed;
+            managed.setType(provider.getType());
+            managed.setAddress(provider.getAddress());
+
+            Set<Appointment> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<Integer> kept = new HashSet<>();
+            List<Appointment> added = new ArrayList<>();
+            for (Appointment a : provider.getAppointments()) {
+                if (!seen.add(a))
+                    continue;
+                Appointment current = a.getId() != null ? stored.get(a.getId()) : null;
+                if (current != null) {
+                    kept.add(current.getId());
+                    if (!Objects.equals(current.getTime(), a.getTime())) {
+                        current.setTime(a.getTime());
+                    }
+                } else if (a.getId() == null) {
+                    a.setProvider(managed);
+                    manager.persist(a);
+                    added.add(a);
+                } else {
+                    // eine fremde oder unbekannte ID würde sonst das Appointment eines anderen Providers übernehmen
+                    throw new IllegalArgumentException("Appointment " + a.getId() + " does not belong to this provider, cannot update!");
+                }
+            }
+            managed.getAppointments().removeIf(a -> !kept.contains(a.getId()));
+            managed.getAppointments().addAll(added);
+
+            manager.flush();
+            changes.replaceProvider(managed.getId(), managed, manager
+                    .createNamedQuery("Appointment.findFreeSlotsOfProviders", AppointmentSlot.class)
+                    .setParameter("providerIds", Collections.singletonList(managed.getId()))
+                    .getResultList());
+            return managed;
+        });
     }
 
 
@@ -138,42 +497,53 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
     public boolean delete(Provider provider) {
         if (provider == null)
             return false;
-        if (read(provider.getId()) == null) {
+        if (provider.getId() == null) {
             throw new IllegalArgumentException("Provider does not exist, cannot delete!");
         }
-        manager.getTransaction().begin();
-        manager.remove(manager.merge(provider));
-        manager.getTransaction().commit();
-
-        return true;
+        return indexedTransaction((manager, changes) -> {
+            Provider managed = find(manager, Provider.class, provider.getId());
+            if (managed == null) {
+                throw new IllegalArgumentException("Provider does not exist, cannot delete!");
+            }
+            manager.remove(managed);
+            manager.flush();
+            changes.replaceProvider(managed.getId(), null, Collections.emptyList());
+            return true;
+        });
     }
 
     @Override
     public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return findCustomersBy(lastname, firstname, MatchMode.CONTAINS);
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, MatchMode mode) {
         if (lastname == null || lastname.isEmpty())
             throw new IllegalArgumentException("Lastname must not be null");
 
+        return query(manager -> customersBy(manager, lastname, firstname, mode).getResultList());
+    }
+
+    private static TypedQuery<Customer> customersBy(EntityManager manager, String lastname, String firstname, MatchMode mode) {
+        MatchMode matchMode = mode != null ? mode : MatchMode.CONTAINS;
+
         if (firstname == null || firstname.isEmpty()) {
             TypedQuery<Customer> query = manager.createNamedQuery(
                     "Customer.findByLastname",
                     Customer.class
             );
-            query.setParameter("lastname", "%" + lastname + "%");
-            return query.getResultList();
+            query.setParameter("lastname", matchMode.pattern(lastname));
+            return query;
         }
 
-        if (lastname != null && firstname != null) {
-            TypedQuery<Customer> query = manager.createQuery(
-                    "select c from Customer c where upper(c.lastname) like upper(:lastname) " +
-                            "and upper(c.firstname) like upper(:firstname)",
-                    Customer.class
-            );
-            query.setParameter("lastname", "%" + lastname + "%");
-            query.setParameter("firstname", "%" + firstname + "%");
-            return query.getResultList();
-        }
-
-        return Collections.emptyList();
+        TypedQuery<Customer> query = manager.createNamedQuery(
+                "Customer.findByLastnameAndFirstname",
+                Customer.class
+        );
+        query.setParameter("lastname", matchMode.pattern(lastname));
+        query.setParameter("firstname", matchMode.pattern(firstname));
+        return query;
     }
 
     @Override
@@ -181,68 +551,320 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (type == null || addressPart == null)
             return Collections.emptyList();
 
-        TypedQuery<Provider> query = manager.createQuery(
-                "select p from Provider p " +
-                        "where p.type = :type " +
-                        "and lower(p.address) LIKE lower(:addressPart)",
-                Provider.class
-        );
+        return query(manager -> {
+            TypedQuery<Provider> query = providersBy(manager, type, addressPart);
+            return query != null ? query.getResultList() : Collections.<Provider>emptyList();
+        });
+    }
+
+    @Override
+    public Flow.Publisher<Provider> publishProvidersBy(ProviderType type, String addressPart) {
+        if (type == null || addressPart == null)
+            return CursorPublisher.empty();
+
+        return publisher(manager -> providersBy(manager, type, addressPart), Provider.class);
+    }
+
+    /**
+     * @return die Abfrage für {@link #findProvidersBy(ProviderType, String)} oder <code>null</code>, falls laut
+     *         Trigramm-Index kein Provider in Frage kommt.
+     */
+    private static TypedQuery<Provider> providersBy(EntityManager manager, ProviderType type, String addressPart) {
+        List<Integer> candidates = providerCandidates(manager, addressPart);
+        if (candidates != null && candidates.isEmpty())
+            return null;
+
+        TypedQuery<Provider> query;
+        if (candidates == null) {
+            query = manager.createNamedQuery("Provider.findByTypeAndAddress", Provider.class);
+        } else {
+            query = manager.createNamedQuery("Provider.findByTypeAndAddressCandidates", Provider.class);
+            query.setParameter("providerIds", candidates);
+        }
 
         query.setParameter("type", type);
         query.setParameter("addressPart", "%" + addressPart + "%");
-
-        return query.getResultList();
+        return query;
     }
 
     @Override
     public List<Appointment> findAppointmentsAt(String addressPart) {
+        return findAppointmentsAt(addressPart, FetchPlan.SLOT_WITH_PROVIDER);
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, FetchPlan plan) {
         if (addressPart == null)
             return Collections.emptyList();
+        FetchPlan fetchPlan = plan != null ? plan : FetchPlan.SLOT_WITH_PROVIDER;
+
+        return query(manager -> {
+            TypedQuery<Appointment> query = freeAt(manager, addressPart);
+            return query != null
+                    ? fetchPlan.applyToFree(manager, query).getResultList()
+                    : Collections.<Appointment>emptyList();
+        });
+    }
 
-        TypedQuery<Appointment> query = manager.createQuery(
-                "select a from Appointment a " +
-                        "where lower(a.provider.address) like lower(:addressPart) " +
-                        "and a.customer is null ",
-                Appointment.class
-        );
+    @Override
+    public Flow.Publisher<Appointment> publishAppointmentsAt(String addressPart) {
+        if (addressPart == null)
+            return CursorPublisher.empty();
+
+        return publisher(manager -> freeAt(manager, addressPart), Appointment.class);
+    }
+
+    /**
+     * @return die Abfrage für {@link #findAppointmentsAt(String)} oder <code>null</code>, falls laut
+     *         Trigramm-Index kein Provider in Frage kommt.
+     */
+    private static TypedQuery<Appointment> freeAt(EntityManager manager, String addressPart) {
+        List<Integer> candidates = providerCandidates(manager, addressPart);
+        if (candidates != null && candidates.isEmpty())
+            return null;
+
+        TypedQuery<Appointment> query;
+        if (candidates == null) {
+            query = manager.createNamedQuery("Appointment.findFreeAt", Appointment.class);
+        } else {
+            query = manager.createNamedQuery("Appointment.findFreeAtCandidates", Appointment.class);
+            query.setParameter("providerIds", candidates);
+        }
 
         query.setParameter("addressPart", "%" + addressPart + "%");
+        return query;
+    }
 
-        return query.getResultList();
+    @Override
+    public List<AppointmentSlot> findSlotsAt(String addressPart) {
+        if (addressPart == null)
+            return Collections.emptyList();
+
+        return query(manager -> {
+            List<Integer> candidates = providerCandidates(manager, addressPart);
+            if (candidates != null && candidates.isEmpty())
+                return Collections.<AppointmentSlot>emptyList();
+
+            TypedQuery<AppointmentSlot> query;
+            if (candidates == null) {
+                query = manager.createNamedQuery("Appointment.findFreeSlotsAt", AppointmentSlot.class);
+            } else {
+                query = manager.createNamedQuery("Appointment.findFreeSlotsAtCandidates", AppointmentSlot.class);
+                query.setParameter("providerIds", candidates);
+            }
+
+            query.setParameter("addressPart", "%" + addressPart + "%");
+
+            return query.getResultList();
+        });
+    }
+
+    /**
+     * Sucht über den Trigramm-Index die IDs aller Provider, deren Adresse <code>addressPart</code> enthalten kann.
+     * @return die Kandidaten oder <code>null</code>, falls der Index für diesen Suchbegriff nicht hilft
+     *         (zu kurz, LIKE-Platzhalter oder so häufig, dass ein Scan billiger ist).
+     */
+    private static List<Integer> providerCandidates(EntityManager manager, String addressPart) {
+        Set<String> trigrams = AddressTrigrams.ofSearch(addressPart);
+        if (trigrams.isEmpty())
+            return null;
+
+        List<Integer> candidates = manager.createNamedQuery("AddressTrigram.findProviderIds", Integer.class)
+                .setParameter("trigrams", new ArrayList<>(trigrams))
+                .setParameter("trigramCount", (long) trigrams.size())
+                .setMaxResults(DEFAULT_BATCH_SIZE + 1)
+                .getResultList();
+        return candidates.size() <= DEFAULT_BATCH_SIZE ? candidates : null;
     }
 
     @Override
     public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
-        if (from == null) {
-            from = LocalDateTime.of(2000, 1, 1, 0, 0);
-        }
-        if (to == null) {
-            to = LocalDateTime.of(3000, 1, 1, 0, 0);
-        }
+        return findAppointments(from, to, FetchPlan.SLOT_WITH_PROVIDER);
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, FetchPlan plan) {
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0);
+        FetchPlan fetchPlan = plan != null ? plan : FetchPlan.SLOT_WITH_PROVIDER;
+
+        return query(manager -> fetchPlan.applyToFree(manager, freeBetween(manager, lower, upper)).getResultList());
+    }
+
+    @Override
+    public Flow.Publisher<Appointment> publishAppointments(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0);
+
+        return publisher(manager -> freeBetween(manager, lower, upper), Appointment.class);
+    }
 
-        TypedQuery<Appointment> query = manager.createQuery(
-                "select a from Appointment a " +
-                        "where a.time >= :from and a.time <= :to and a.customer is null",
+    private static TypedQuery<Appointment> freeBetween(EntityManager manager, LocalDateTime from, LocalDateTime to) {
+        TypedQuery<Appointment> query = manager.createNamedQuery(
+                "Appointment.findFreeBetween",
                 Appointment.class
         );
 
         query.setParameter("from", from);
         query.setParameter("to", to);
+        return query;
+    }
+
+    @Override
+    public List<AppointmentSlot> findSlots(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0);
+
+        return query(manager -> {
+            TypedQuery<AppointmentSlot> query = manager.createNamedQuery(
+                    "Appointment.findFreeSlotsBetween",
+                    AppointmentSlot.class
+            );
+
+            query.setParameter("from", lower);
+            query.setParameter("to", upper);
+
+            return query.getResultList();
+        });
+    }
+
+    @Override
+    public List<AppointmentSlot> findFreeSlotsByProvider(Integer providerId, LocalDateTime from, LocalDateTime to) {
+        if (providerId == null)
+            return Collections.emptyList();
+        return availability.findFree(providerId,
+                from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0),
+                to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0));
+    }
+
+    @Override
+    public List<AppointmentSlot> findFreeSlotsByType(ProviderType type, LocalDateTime from, LocalDateTime to) {
+        if (type == null)
+            return Collections.emptyList();
+        return availability.findFree(type,
+                from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0),
+                to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0));
+    }
+
+    @Override
+    public OccupancyCalendar getOccupancyCalendar() {
+        return calendar;
+    }
+
+    AvailabilityIndex availability() {
+        return availability;
+    }
+
+    @Override
+    public AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after) {
+        return findAppointments(from, to, pageSize, after, FetchPlan.SLOT_WITH_PROVIDER);
+    }
+
+    @Override
+    public AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after,
+                                            FetchPlan plan) {
+        if (pageSize < 1 || pageSize > DEFAULT_BATCH_SIZE)
+            throw new IllegalArgumentException("Page size must be between 1 and " + DEFAULT_BATCH_SIZE);
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0);
+
+        FetchPlan fetchPlan = plan != null ? plan : FetchPlan.SLOT_WITH_PROVIDER;
+
+        AppointmentPage.Token start = after != null && !after.getTime().isBefore(lower)
+                ? after
+                : new AppointmentPage.Token(lower, Integer.MIN_VALUE);
+
+        List<Appointment> appointments = query(manager -> {
+            TypedQuery<Appointment> query = manager.createNamedQuery(
+                    "Appointment.findFreeBetweenAfter",
+                    Appointment.class
+            );
+
+            query.setParameter("after", start.getTime());
+            query.setParameter("afterId", start.getId());
+            query.setParameter("to", upper);
+            // one more than requested tells whether there is a next page
+            query.setMaxResults(pageSize + 1);
+
+            return fetchPlan.applyToFree(manager, query).getResultList();
+        });
+
+        if (appointments.size() <= pageSize)
+            return new AppointmentPage(appointments, null);
+
+        List<Appointment> page = new ArrayList<>(appointments.subList(0, pageSize));
+        Appointment last = page.get(pageSize - 1);
+        return new AppointmentPage(page, new AppointmentPage.Token(last.getTime(), last.getId()));
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to, int fetchSize) {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+        LocalDateTime lower = from != null ? from : LocalDateTime.of(2000, 1, 1, 0, 0);
+        LocalDateTime upper = to != null ? to : LocalDateTime.of(3000, 1, 1, 0, 0);
+
+        return stream(manager -> {
+            TypedQuery<Appointment> query = manager.createNamedQuery(
+                    "Appointment.findFreeBetweenAfter",
+                    Appointment.class
+            );
+            query.setParameter("after", lower);
+            query.setParameter("afterId", Integer.MIN_VALUE);
+            query.setParameter("to", upper);
+            return query;
+        }, Appointment.class, fetchSize);
+    }
+
+    @Override
+    public Stream<Customer> streamCustomers(int fetchSize) {
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("Fetch size must be at least 1");
+
+        return stream(manager -> manager.createNamedQuery("Customer.findAll", Customer.class), Customer.class, fetchSize);
+    }
+
+    @Override
+    public Stream<Customer> streamCustomersBy(String lastname, String firstname, MatchMode mode, int fetchSize) {
+        if (lastname == null || lastname.isEmpty())
+            throw new IllegalArgumentException("Lastname must not be null");
+        if (fetchSize < 1)
+            throw new IllegalArgumentException("Fetch size must be at least 1");
 
-        return query.getResultList();
+        return stream(manager -> customersBy(manager, lastname, firstname, mode), Customer.class, fetchSize);
     }
 
     @Override
     public List<Appointment> getAppointmentsFor(Customer customer) {
+        return getAppointmentsFor(customer, FetchPlan.BOOKING);
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, FetchPlan plan) {
         if (customer == null || customer.getEmail() == null || customer.getEmail().isEmpty()) {
             return Collections.emptyList();
         }
+        FetchPlan fetchPlan = plan != null ? plan : FetchPlan.BOOKING;
 
-        TypedQuery<Appointment> query = manager.createQuery("select a from Appointment a where a.customer = :customer",
-                Appointment.class);
-        query.setParameter("customer", customer);
+        return query(manager -> fetchPlan.apply(manager, bookedBy(manager, customer.getEmail())).getResultList());
+    }
+
+    @Override
+    public Flow.Publisher<Appointment> publishAppointmentsFor(Customer customer) {
+        if (customer == null || customer.getEmail() == null || customer.getEmail().isEmpty()) {
+            return CursorPublisher.empty();
+        }
 
-        return query.getResultList();
+        String email = customer.getEmail();
+        return publisher(manager -> bookedBy(manager, email), Appointment.class);
+    }
+
+    private static TypedQuery<Appointment> bookedBy(EntityManager manager, String email) {
+        TypedQuery<Appointment> query = manager.createNamedQuery(
+                "Appointment.findByCustomer",
+                Appointment.class);
+        query.setParameter("email", email);
+        return query;
     }
 
     @Override
@@ -250,24 +872,36 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (customer == null || appointment == null) {
             return false;
         }
-        if (customer.getEmail() == null) {
+        if (customer.getEmail() == null || appointment.getId() == null) {
             return false;
         }
-        if (read(customer.getEmail()) == null) {
+        // compare-and-set: nur ein freies Appointment wird vergeben, ob der Customer existiert, prüft der Fremdschlüssel
+        int updated;
+        try {
+            updated = indexedTransaction((manager, changes) -> {
+                int count = manager.createQuery(
+                        "update Appointment a set a.customer = :customer, a.version = a.version + 1 " +
+                                "where a.id = :id and a.customer is null"
+                )
+                        .setParameter("customer", customer)
+                        .setParameter("id", appointment.getId())
+                        .setHint(QueryHints.CACHE_USAGE, CacheUsage.NoCache)
+                        .executeUpdate();
+                if (count == 1)
+                    changes.remove(appointment.getId());
+                return count;
+            });
+        } catch (PersistenceException e) {
+            if (!hasSqlState(e, "23503"))
+                throw e;
             return false;
         }
-        if (appointment.getCustomer() != null) {
+        if (updated == 0) {
             return false;
         }
-        if (appointment.getProvider() == null) {
-            return false;
-        } else
-            appointment.setCustomer(customer);
-
-        manager.getTransaction().begin();
-        manager.merge(appointment);
-        manager.getTransaction().commit();
-
+        factory.getCache().evict(Appointment.class, appointment.getId());
+        appointment.setCustomer(customer);
+        appointment.setVersion(appointment.getVersion() + 1);
         return true;
     }
 
@@ -276,33 +910,42 @@ public class AppointmentRepositoryFactory implements AppointmentRepository {
         if (customer == null || appointment == null) {
             return false;
         }
-        if (customer.getEmail() == null) {
-            return false;
-        }
-        if (read(customer.getEmail()) == null) {
+        if (customer.getEmail() == null || appointment.getId() == null) {
             return false;
         }
-        if (appointment.getCustomer() == null) {
-            return false;
-        }
-        if (appointment.getCustomer() != customer) {
+        // compare-and-set: nur der Customer, dem das Appointment gehört, kann stornieren
+        int updated = indexedTransaction((manager, changes) -> {
+            int count = manager.createQuery(
+                    "update Appointment a set a.customer = null, a.version = a.version + 1 " +
+                            "where a.id = :id and a.customer = :customer"
+            )
+                    .setParameter("customer", customer)
+                    .setParameter("id", appointment.getId())
+                    .setHint(QueryHints.CACHE_USAGE, CacheUsage.NoCache)
+                    .executeUpdate();
+            if (count == 1) {
+                changes.add(manager.createNamedQuery("Appointment.findSlotById", AppointmentSlot.class)
+                        .setParameter("id", appointment.getId())
+                        .getSingleResult());
+            }
+            return count;
+        });
+        if (updated == 0) {
             return false;
         }
-        if (appointment.getProvider() == null) {
-            return false;
-        } else
-            appointment.setCustomer(null);
-        manager.getTransaction().begin();
-        manager.merge(appointment);
-        manager.getTransaction().commit();
-
+        factory.getCache().evict(Appointment.class, appointment.getId());
+        appointment.setCustomer(null);
+        appointment.setVersion(appointment.getVersion() + 1);
         return true;
     }
 
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
     @Override
     public void close() {
-        if (manager != null && manager.isOpen()) {
-            manager.close();
-        }
+        // jeder Aufruf schließt seinen EntityManager selbst, die Factory gehört dem Aufrufer
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,11 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+
+/**
+ * Schreibgeschützte Sicht auf einen freien Termin, wie sie für die Terminauswahl benötigt wird.
+ * Wird direkt per Konstruktor-Ausdruck aus der Abfrage erzeugt und nicht im Persistence Context verwaltet.
+ */
+public record AppointmentSlot(Integer appointmentId, LocalDateTime time, Integer providerId,
+                              ProviderType providerType, String address) {
+}
@@ -0,0 +1,178 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Nicht-blockierendes Gegenstück zum {@link AppointmentRepository}.
+ * <p>Jede Methode entspricht der gleichnamigen Methode des {@link AppointmentRepository} mit denselben Bedingungen,
+ * liefert das Ergebnis aber als <code>CompletableFuture</code>. Der aufrufende Thread wartet nicht auf die Datenbank.
+ * <ul>
+ *   <li> Exceptions des {@link AppointmentRepository} (z.B. <code>IllegalArgumentException</code>) werden nicht
+ *        geworfen, sondern schließen das Future mit dieser Exception ab.</li>
+ *   <li> Es laufen höchstens so viele Aufrufe gleichzeitig gegen die Datenbank, wie Verbindungen zur Verfügung stehen -
+ *        alle weiteren warten, ohne dafür einen eigenen Thread zu belegen.</li>
+ *   <li> Die Suche nach freien Terminen wird aus dem Index im Speicher beantwortet und wartet daher nicht auf eine
+ *        Verbindung - das Future ist bereits bei der Rückgabe abgeschlossen, außer der Index muss den Provider bzw.
+ *        Typ erst aus der Datenbank laden.</li>
+ *   <li> Die Streams des {@link AppointmentRepository} gibt es hier nicht, da sie ohnehin erst beim Lesen auf die
+ *        Datenbank zugreifen.</li>
+ * </ul>
+ */
+public interface AsyncAppointmentRepository extends AutoCloseable {
+
+    /**
+     * @see AppointmentRepository#create(Customer)
+     */
+    CompletableFuture<Boolean> create(Customer customer);
+
+    /**
+     * @see AppointmentRepository#read(String)
+     */
+    CompletableFuture<Customer> read(String email);
+
+    /**
+     * @see AppointmentRepository#update(Customer)
+     */
+    CompletableFuture<Customer> update(Customer customer);
+
+    /**
+     * @see AppointmentRepository#delete(Customer)
+     */
+    CompletableFuture<Boolean> delete(Customer customer);
+
+    /**
+     * @see AppointmentRepository#deleteCustomers(Collection)
+     */
+    CompletableFuture<Integer> deleteCustomers(Collection<String> emails);
+
+    /**
+     * @see AppointmentRepository#create(Provider)
+     */
+    CompletableFuture<Boolean> create(Provider provider);
+
+    /**
+     * @see AppointmentRepository#createAll(Collection)
+     */
+    CompletableFuture<Integer> createAll(Collection<Provider> providers);
+
+    /**
+     * @see AppointmentRepository#createAll(Collection, int)
+     */
+    CompletableFuture<Integer> createAll(Collection<Provider> providers, int batchSize);
+
+    /**
+     * @see AppointmentRepository#read(Integer)
+     */
+    CompletableFuture<Provider> read(Integer id);
+
+    /**
+     * @see AppointmentRepository#update(Provider)
+     */
+    CompletableFuture<Provider> update(Provider provider);
+
+    /**
+     * @see AppointmentRepository#delete(Provider)
+     */
+    CompletableFuture<Boolean> delete(Provider provider);
+
+    /**
+     * @see AppointmentRepository#findCustomersBy(String, String)
+     */
+    CompletableFuture<List<Customer>> findCustomersBy(String lastname, String firstname);
+
+    /**
+     * @see AppointmentRepository#findCustomersBy(String, String, MatchMode)
+     */
+    CompletableFuture<List<Customer>> findCustomersBy(String lastname, String firstname, MatchMode mode);
+
+    /**
+     * @see AppointmentRepository#findProvidersBy(ProviderType, String)
+     */
+    CompletableFuture<List<Provider>> findProvidersBy(ProviderType type, String addressPart);
+
+    /**
+     * @see AppointmentRepository#findAppointmentsAt(String)
+     */
+    CompletableFuture<List<Appointment>> findAppointmentsAt(String addressPart);
+
+    /**
+     * @see AppointmentRepository#findAppointmentsAt(String, FetchPlan)
+     */
+    CompletableFuture<List<Appointment>> findAppointmentsAt(String addressPart, FetchPlan plan);
+
+    /**
+     * @see AppointmentRepository#findAppointments(LocalDateTime, LocalDateTime)
+     */
+    CompletableFuture<List<Appointment>> findAppointments(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @see AppointmentRepository#findAppointments(LocalDateTime, LocalDateTime, FetchPlan)
+     */
+    CompletableFuture<List<Appointment>> findAppointments(LocalDateTime from, LocalDateTime to, FetchPlan plan);
+
+    /**
+     * @see AppointmentRepository#findAppointments(LocalDateTime, LocalDateTime, int, AppointmentPage.Token)
+     */
+    CompletableFuture<AppointmentPage> findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after);
+
+    /**
+     * @see AppointmentRepository#findAppointments(LocalDateTime, LocalDateTime, int, AppointmentPage.Token, FetchPlan)
+     */
+    CompletableFuture<AppointmentPage> findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after,
+                                                        FetchPlan plan);
+
+    /**
+     * @see AppointmentRepository#findSlotsAt(String)
+     */
+    CompletableFuture<List<AppointmentSlot>> findSlotsAt(String addressPart);
+
+    /**
+     * @see AppointmentRepository#findSlots(LocalDateTime, LocalDateTime)
+     */
+    CompletableFuture<List<AppointmentSlot>> findSlots(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @see AppointmentRepository#findFreeSlotsByProvider(Integer, LocalDateTime, LocalDateTime)
+     */
+    CompletableFuture<List<AppointmentSlot>> findFreeSlotsByProvider(Integer providerId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @see AppointmentRepository#findFreeSlotsByType(ProviderType, LocalDateTime, LocalDateTime)
+     */
+    CompletableFuture<List<AppointmentSlot>> findFreeSlotsByType(ProviderType type, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @see AppointmentRepository#getAppointmentsFor(Customer)
+     */
+    CompletableFuture<List<Appointment>> getAppointmentsFor(Customer customer);
+
+    /**
+     * @see AppointmentRepository#getAppointmentsFor(Customer, FetchPlan)
+     */
+    CompletableFuture<List<Appointment>> getAppointmentsFor(Customer customer, FetchPlan plan);
+
+    /**
+     * @see AppointmentRepository#reserve(Appointment, Customer)
+     */
+    CompletableFuture<Boolean> reserve(Appointment appointment, Customer customer);
+
+    /**
+     * @see AppointmentRepository#cancel(Appointment, Customer)
+     */
+    CompletableFuture<Boolean> cancel(Appointment appointment, Customer customer);
+
+    /**
+     * Liefert das blockierende Repository, an das die Aufrufe weitergegeben werden.
+     */
+    AppointmentRepository blocking();
+
+    /**
+     * Nimmt keine neuen Aufrufe mehr an und wartet, bis alle bereits angenommenen Aufrufe abgeschlossen sind.
+     * Das blockierende Repository bleibt offen.
+     */
+    @Override
+    void close();
+}
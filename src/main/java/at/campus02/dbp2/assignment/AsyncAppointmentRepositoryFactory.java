@@ -0,0 +1,266 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public class AsyncAppointmentRepositoryFactory implements AsyncAppointmentRepository {
+
+    // Standardgröße des internen Connection Pools von EclipseLink
+    static final int DEFAULT_MAX_CONNECTIONS = 32;
+    static final String MAX_CONNECTIONS = PersistenceUnitProperties.CONNECTION_POOL + "default." + PersistenceUnitProperties.CONNECTION_POOL_MAX;
+
+    private final AppointmentRepository repository;
+    private final Semaphore connections;
+    private final ExecutorService executor;
+
+    AsyncAppointmentRepositoryFactory(AppointmentRepository repository, int maxConnections) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be positive");
+        this.repository = repository;
+        this.connections = new Semaphore(maxConnections, true);
+        this.executor = newTaskExecutor(maxConnections);
+    }
+
+    /**
+     * Erzeugt ein asynchrones Repository für die übergebene EntityManagerFactory, das höchstens so viele Aufrufe
+     * gleichzeitig ausführt, wie der Connection Pool der Persistence Unit Verbindungen hat
+     * (<code>eclipselink.connection-pool.default.max</code>, ansonsten 32).
+     * Jedes Repository besitzt eigene Threads und muss daher geschlossen werden.
+     */
+    public static AsyncAppointmentRepository open(EntityManagerFactory factory) {
+        Object max = factory.getProperties().get(MAX_CONNECTIONS);
+        return open(factory, max == null ? DEFAULT_MAX_CONNECTIONS : Integer.parseInt(String.valueOf(max)));
+    }
+
+    /**
+     * Wie {@link #open(EntityManagerFactory)}, aber mit höchstens <code>maxConnections</code> gleichzeitigen Aufrufen.
+     * @throws IllegalArgumentException falls <code>maxConnections</code> kleiner als 1 ist.
+     */
+    public static AsyncAppointmentRepository open(EntityManagerFactory factory, int maxConnections) {
+        return new AsyncAppointmentRepositoryFactory(AppointmentRepositoryFactory.get(factory), maxConnections);
+    }
+
+    /**
+     * Ab Java 21 bekommt jeder Aufruf einen eigenen virtuellen Thread, der beim Warten auf eine Verbindung keinen
+     * Plattform-Thread belegt. Auf älteren Laufzeiten arbeiten genau so viele Plattform-Threads, wie es Verbindungen
+     * gibt, alle weiteren Aufrufe warten in der Queue des Pools.
+     */
+    static ExecutorService newTaskExecutor(int maxConnections) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            AtomicInteger count = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxConnections, task -> {
+                Thread thread = new Thread(task, "appointment-repository-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(() -> {
+            connections.acquireUninterruptibly();
+            try {
+                return call.get();
+            } finally {
+                connections.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Für Abfragen, die der Index im Speicher beantwortet: sie belegen weder eine Verbindung noch einen Platz in der
+     * Queue des Pools und laufen direkt im aufrufenden Thread - aber nur, wenn <code>loaded</code> bestätigt, dass der
+     * Index die Daten bereits hat. Nach dem Öffnen eines gespeicherten Belegungskalenders liest der erste Zugriff auf
+     * einen Provider bzw. Typ aus der Datenbank und läuft daher wie jeder andere Aufruf über {@link #submit(Supplier)}.
+     */
+    private <T> CompletableFuture<T> inMemoryIf(Predicate<AvailabilityIndex> loaded, Supplier<T> call) {
+        if (!(repository instanceof AppointmentRepositoryFactory)
+                || !loaded.test(((AppointmentRepositoryFactory) repository).availability()))
+            return submit(call);
+        try {
+            return CompletableFuture.completedFuture(call.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    //-------------------------------Customer-------------------------------------------------------
+    @Override
+    public CompletableFuture<Boolean> create(Customer customer) {
+        return submit(() -> repository.create(customer));
+    }
+
+    @Override
+    public CompletableFuture<Customer> read(String email) {
+        return submit(() -> repository.read(email));
+    }
+
+    @Override
+    public CompletableFuture<Customer> update(Customer customer) {
+        return submit(() -> repository.update(customer));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(Customer customer) {
+        return submit(() -> repository.delete(customer));
+    }
+
+    @Override
+    public CompletableFuture<Integer> deleteCustomers(Collection<String> emails) {
+        return submit(() -> repository.deleteCustomers(emails));
+    }
+
+    //-------------------------------Provider-------------------------------------------------------
+    @Override
+    public CompletableFuture<Boolean> create(Provider provider) {
+        return submit(() -> repository.create(provider));
+    }
+
+    @Override
+    public CompletableFuture<Integer> createAll(Collection<Provider> providers) {
+        return submit(() -> repository.createAll(providers));
+    }
+
+    @Override
+    public CompletableFuture<Integer> createAll(Collection<Provider> providers, int batchSize) {
+        return submit(() -> repository.createAll(providers, batchSize));
+    }
+
+    @Override
+    public CompletableFuture<Provider> read(Integer id) {
+        return submit(() -> repository.read(id));
+    }
+
+    @Override
+    public CompletableFuture<Provider> update(Provider provider) {
+        return submit(() -> repository.update(provider));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> delete(Provider provider) {
+        return submit(() -> repository.delete(provider));
+    }
+
+    //-------------------------------Finder---------------------------------------------------------
+    @Override
+    public CompletableFuture<List<Customer>> findCustomersBy(String lastname, String firstname) {
+        return submit(() -> repository.findCustomersBy(lastname, firstname));
+    }
+
+    @Override
+    public CompletableFuture<List<Customer>> findCustomersBy(String lastname, String firstname, MatchMode mode) {
+        return submit(() -> repository.findCustomersBy(lastname, firstname, mode));
+    }
+
+    @Override
+    public CompletableFuture<List<Provider>> findProvidersBy(ProviderType type, String addressPart) {
+        return submit(() -> repository.findProvidersBy(type, addressPart));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> findAppointmentsAt(String addressPart) {
+        return submit(() -> repository.findAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> findAppointmentsAt(String addressPart, FetchPlan plan) {
+        return submit(() -> repository.findAppointmentsAt(addressPart, plan));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return submit(() -> repository.findAppointments(from, to));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> findAppointments(LocalDateTime from, LocalDateTime to, FetchPlan plan) {
+        return submit(() -> repository.findAppointments(from, to, plan));
+    }
+
+    @Override
+    public CompletableFuture<AppointmentPage> findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after) {
+        return submit(() -> repository.findAppointments(from, to, pageSize, after));
+    }
+
+    @Override
+    public CompletableFuture<AppointmentPage> findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after,
+                                                               FetchPlan plan) {
+        return submit(() -> repository.findAppointments(from, to, pageSize, after, plan));
+    }
+
+    @Override
+    public CompletableFuture<List<AppointmentSlot>> findSlotsAt(String addressPart) {
+        return submit(() -> repository.findSlotsAt(addressPart));
+    }
+
+    @Override
+    public CompletableFuture<List<AppointmentSlot>> findSlots(LocalDateTime from, LocalDateTime to) {
+        return submit(() -> repository.findSlots(from, to));
+    }
+
+    @Override
+    public CompletableFuture<List<AppointmentSlot>> findFreeSlotsByProvider(Integer providerId, LocalDateTime from, LocalDateTime to) {
+        return inMemoryIf(index -> providerId == null || index.isLoaded(providerId),
+                () -> repository.findFreeSlotsByProvider(providerId, from, to));
+    }
+
+    @Override
+    public CompletableFuture<List<AppointmentSlot>> findFreeSlotsByType(ProviderType type, LocalDateTime from, LocalDateTime to) {
+        return inMemoryIf(index -> type == null || index.isLoaded(type),
+                () -> repository.findFreeSlotsByType(type, from, to));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> getAppointmentsFor(Customer customer) {
+        return submit(() -> repository.getAppointmentsFor(customer));
+    }
+
+    @Override
+    public CompletableFuture<List<Appointment>> getAppointmentsFor(Customer customer, FetchPlan plan) {
+        return submit(() -> repository.getAppointmentsFor(customer, plan));
+    }
+
+    //-------------------------------Reservation----------------------------------------------------
+    @Override
+    public CompletableFuture<Boolean> reserve(Appointment appointment, Customer customer) {
+        return submit(() -> repository.reserve(appointment, customer));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> cancel(Appointment appointment, Customer customer) {
+        return submit(() -> repository.cancel(appointment, customer));
+    }
+
+    @Override
+    public AppointmentRepository blocking() {
+        return repository;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // bereits angenommene Aufrufe laufen noch
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
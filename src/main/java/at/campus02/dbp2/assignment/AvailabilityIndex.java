@@ -0,0 +1,464 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Hält alle freien Appointments je Provider nach Zeitpunkt sortiert im Speicher, damit Bereichsabfragen ohne
+ * Datenbankzugriff beantwortet werden können.
+ * <p>Das {@link AppointmentRepositoryFactory} sammelt die Änderungen einer schreibenden Transaktion in {@link Changes}
+ * und wendet sie erst nach dem Commit an - eine zurückgerollte Transaktion ändert den Index nicht. Jede Transaktion
+ * bekommt vor dem Commit, während die betroffenen Zeilen in der Datenbank gesperrt sind, eine fortlaufende Nummer.
+ * Der Index merkt sich je Appointment die Nummer der zuletzt angewendeten Änderung und verwirft ältere - konkurrierende
+ * Änderungen derselben Appointments wirken dadurch in derselben Reihenfolge wie in der Datenbank, auch wenn sie nach dem
+ * Commit in anderer Reihenfolge ankommen. Für nicht mehr freie Appointments bleibt dafür ein Grabstein stehen, bis keine
+ * ältere Transaktion mehr aussteht.
+ * <p>Ist ein {@link OccupancyCalendar} angegeben, werden alle Änderungen auch dort eingetragen. Änderungen eines Providers
+ * laufen unter einer Sperre je Provider, damit das Bit einer Viertelstunde immer zu den freien Appointments passt.
+ * Provider und Tage, die der Kalender nicht erfasst, werden einmal je Provider an <code>warnings</code> gemeldet.
+ * <p>Nach {@link #loadOnDemand(Loader)} werden die freien Appointments eines Providers erst beim ersten Zugriff gelesen,
+ * z.B. nach einem Neustart, bei dem der Kalender bereits stimmt und nicht der ganze Index geladen werden soll.
+ */
+final class AvailabilityIndex {
+
+    private static final class Slot {
+        final LocalDateTime time;
+        final int id;
+        final int providerId;
+        final long sequence;
+        final boolean free;
+
+        Slot(LocalDateTime time, int id, int providerId, long sequence, boolean free) {
+            this.time = time;
+            this.id = id;
+            this.providerId = providerId;
+            this.sequence = sequence;
+            this.free = free;
+        }
+
+        static Slot bound(LocalDateTime time, int id, int providerId) {
+            return new Slot(time, id, providerId, 0, true);
+        }
+    }
+
+    private static final class ProviderSlots {
+        final ProviderType type;
+        final String address;
+        final long sequence;
+        final NavigableSet<Slot> free = new ConcurrentSkipListSet<>(ORDER);
+
+        ProviderSlots(ProviderType type, String address, long sequence) {
+            this.type = type;
+            this.address = address;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Liest freie Appointments aus der Datenbank, wenn sie erst beim ersten Zugriff geladen werden.
+     */
+    interface Loader {
+        List<AppointmentSlot> freeSlotsOf(int providerId);
+
+        List<AppointmentSlot> freeSlotsOf(ProviderType type);
+
+        /**
+         * @return die ID des Providers des Appointments, oder <code>null</code> falls es das Appointment nicht gibt.
+         */
+        Integer providerOf(int appointmentId);
+    }
+
+    /**
+     * Die Änderungen einer schreibenden Transaktion. Sie werden gesammelt, mit {@link #seal()} vor dem Commit nummeriert
+     * und mit {@link #apply()} nach dem Commit angewendet. {@link #close()} muss in jedem Fall aufgerufen werden.
+     */
+    final class Changes implements AutoCloseable {
+        private final List<LongConsumer> pending = new ArrayList<>();
+        private long sequence;
+
+        /**
+         * Ein Appointment ist frei geworden.
+         */
+        void add(AppointmentSlot slot) {
+            pending.add(sequence -> AvailabilityIndex.this.add(slot, sequence));
+        }
+
+        /**
+         * Ein Appointment ist nicht mehr frei.
+         */
+        void remove(int appointmentId) {
+            pending.add(sequence -> AvailabilityIndex.this.remove(appointmentId, sequence));
+        }
+
+        /**
+         * Die freien Appointments des Providers stehen fest, siehe {@link AvailabilityIndex#replaceProvider}.
+         */
+        void replaceProvider(int providerId, Provider provider, Collection<AppointmentSlot> free) {
+            ProviderType type = provider != null ? provider.getType() : null;
+            String address = provider != null ? provider.getAddress() : null;
+            pending.add(sequence -> AvailabilityIndex.this.replaceProvider(providerId, provider != null, type, address,
+                    free, sequence));
+        }
+
+        /**
+         * Vergibt die Nummer der Transaktion. Muss nach der letzten Anweisung und vor dem Commit aufgerufen werden.
+         */
+        void seal() {
+            if (sequence == 0 && !pending.isEmpty()) {
+                sequence = sequences.incrementAndGet();
+                inFlight.add(sequence);
+            }
+        }
+
+        void apply() {
+            for (LongConsumer change : pending) {
+                change.accept(sequence);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (sequence != 0) {
+                inFlight.remove(sequence);
+                pruneTombstones();
+            }
+        }
+    }
+
+    private static final Comparator<Slot> ORDER = Comparator.<Slot, LocalDateTime>comparing(slot -> slot.time)
+            .thenComparingInt(slot -> slot.id);
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final ConcurrentMap<Integer, ProviderSlots> byProvider = new ConcurrentHashMap<>();
+    // freie Appointments und Grabsteine
+    private final ConcurrentMap<Integer, Slot> byAppointment = new ConcurrentHashMap<>();
+    private final Queue<Slot> tombstones = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sequences = new AtomicLong();
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Set<Integer> untracked = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> loaded = ConcurrentHashMap.newKeySet();
+    private final Set<ProviderType> loadedTypes = ConcurrentHashMap.newKeySet();
+    private final OccupancyCalendar calendar;
+    private final Consumer<String> warnings;
+    private volatile Loader loader;
+
+    AvailabilityIndex(OccupancyCalendar calendar, Consumer<String> warnings) {
+        this.calendar = calendar;
+        this.warnings = warnings;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * @return ein leerer Satz Änderungen für eine neue Transaktion.
+     */
+    Changes changes() {
+        return new Changes();
+    }
+
+    /**
+     * Lädt die freien Appointments eines Providers ab jetzt erst beim ersten Zugriff über <code>loader</code>.
+     * Der {@link OccupancyCalendar} muss für alle noch nicht geladenen Provider stimmen.
+     */
+    void loadOnDemand(Loader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * @return <code>true</code> falls {@link #findFree(int, LocalDateTime, LocalDateTime)} für den Provider ohne
+     *         Zugriff auf die Datenbank auskommt.
+     */
+    boolean isLoaded(int providerId) {
+        return loader == null || loaded.contains(providerId);
+    }
+
+    /**
+     * @return <code>true</code> falls {@link #findFree(ProviderType, LocalDateTime, LocalDateTime)} für den Typ ohne
+     *         Zugriff auf die Datenbank auskommt.
+     */
+    boolean isLoaded(ProviderType type) {
+        return loader == null || loadedTypes.contains(type);
+    }
+
+    /**
+     * Lädt die freien Appointments des Providers, falls das noch nicht passiert ist.
+     */
+    private void ensureLoaded(int providerId) {
+        if (loader == null || loaded.contains(providerId))
+            return;
+        synchronized (lockOf(providerId)) {
+            if (loaded.contains(providerId))
+                return;
+            // wer vor dem Lesen committet, ist im Ergebnis enthalten - spätere Änderungen haben eine höhere Nummer
+            long sequence = sequences.get();
+            install(providerId, loader.freeSlotsOf(providerId), sequence);
+        }
+    }
+
+    private void ensureLoaded(ProviderType type) {
+        if (loader == null || loadedTypes.contains(type))
+            return;
+        long sequence = sequences.get();
+        Map<Integer, List<AppointmentSlot>> free = new HashMap<>();
+        for (AppointmentSlot slot : loader.freeSlotsOf(type)) {
+            free.computeIfAbsent(slot.providerId(), id -> new ArrayList<>()).add(slot);
+        }
+        for (Map.Entry<Integer, List<AppointmentSlot>> entry : free.entrySet()) {
+            synchronized (lockOf(entry.getKey())) {
+                // ein inzwischen geladener Provider ist mindestens so aktuell wie das Ergebnis
+                if (!loaded.contains(entry.getKey()))
+                    install(entry.getKey(), entry.getValue(), sequence);
+            }
+        }
+        loadedTypes.add(type);
+    }
+
+    /**
+     * Übernimmt die gelesenen freien Appointments eines Providers. Muss unter der Sperre des Providers aufgerufen werden.
+     */
+    private void install(int providerId, List<AppointmentSlot> free, long sequence) {
+        loaded.add(providerId);
+        if (calendar != null)
+            calendar.clearProvider(providerId);
+        for (AppointmentSlot slot : free) {
+            add(slot, sequence);
+        }
+    }
+
+    /**
+     * Nimmt ein freies Appointment beim Laden aus der Datenbank auf, solange noch keine Transaktion läuft.
+     */
+    void add(AppointmentSlot slot) {
+        add(slot, 0);
+    }
+
+    /**
+     * Nimmt ein freies Appointment auf, außer es ist bereits eine neuere Änderung bekannt. Ist der Provider noch
+     * unbekannt, wird er mit Typ und Adresse des Slots angelegt.
+     * Ein Appointment wechselt nie den Provider (siehe {@link AppointmentRepository#update(Provider)}).
+     */
+    void add(AppointmentSlot slot, long sequence) {
+        Slot entry = new Slot(slot.time(), slot.appointmentId(), slot.providerId(), sequence, true);
+        ensureLoaded(entry.providerId);
+        synchronized (lockOf(entry.providerId)) {
+            while (true) {
+                Slot current = byAppointment.get(entry.id);
+                if (current != null && current.sequence > sequence)
+                    return;
+                // Grabsteine werden auch ohne Sperre des Providers gesetzt, daher compare-and-set
+                if (current == null ? byAppointment.putIfAbsent(entry.id, entry) != null
+                        : !byAppointment.replace(entry.id, current, entry))
+                    continue;
+                if (current != null && current.free)
+                    release(current);
+                byProvider.computeIfAbsent(entry.providerId,
+                        id -> new ProviderSlots(slot.providerType(), slot.address(), sequence)).free.add(entry);
+                markFree(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Entfernt ein Appointment, das nicht mehr frei ist, außer es ist bereits eine neuere Änderung bekannt.
+     */
+    void remove(int appointmentId, long sequence) {
+        Loader load = loader;
+        if (load != null && byAppointment.get(appointmentId) == null) {
+            // der Provider ist vielleicht noch nicht geladen, das Bit seiner Viertelstunde hängt aber davon ab
+            Integer providerId = load.providerOf(appointmentId);
+            if (providerId != null)
+                ensureLoaded(providerId);
+        }
+        while (true) {
+            Slot current = byAppointment.get(appointmentId);
+            if (current != null && current.sequence > sequence)
+                return;
+            if (current != null && current.free) {
+                synchronized (lockOf(current.providerId)) {
+                    // zwischen get und Sperre kann sich das Appointment geändert haben
+                    if (byAppointment.replace(appointmentId, current, tombstone(appointmentId, current.providerId, sequence))) {
+                        release(current);
+                        return;
+                    }
+                }
+            } else {
+                Slot tombstone = tombstone(appointmentId, -1, sequence);
+                if (current == null ? byAppointment.putIfAbsent(appointmentId, tombstone) == null
+                        : byAppointment.replace(appointmentId, current, tombstone))
+                    return;
+            }
+        }
+    }
+
+    private Slot tombstone(int appointmentId, int providerId, long sequence) {
+        Slot tombstone = new Slot(null, appointmentId, providerId, sequence, false);
+        if (sequence != 0)
+            tombstones.add(tombstone);
+        return tombstone;
+    }
+
+    /**
+     * Entfernt Grabsteine, die älter als jede noch ausstehende Transaktion sind.
+     */
+    private void pruneTombstones() {
+        Long oldest = inFlight.isEmpty() ? null : inFlight.first();
+        for (Slot tombstone = tombstones.peek(); tombstone != null && (oldest == null || tombstone.sequence < oldest);
+             tombstone = tombstones.peek()) {
+            if (tombstones.remove(tombstone))
+                byAppointment.remove(tombstone.id, tombstone);
+        }
+    }
+
+    private Object lockOf(int providerId) {
+        return locks[Math.floorMod(providerId, locks.length)];
+    }
+
+    private void markFree(Slot slot) {
+        if (calendar == null || calendar.setFree(slot.providerId, slot.time, true) || calendar.covers(slot.providerId, slot.time))
+            return;
+        if (untracked.add(slot.providerId) && warnings != null)
+            warnings.accept("Occupancy calendar does not cover provider " + slot.providerId + " at " + slot.time
+                    + ", its free appointments are only tracked by the availability index");
+    }
+
+    /**
+     * Muss unter der Sperre des Providers aufgerufen werden.
+     */
+    private void release(Slot slot) {
+        NavigableSet<Slot> free = slotsOf(slot.providerId);
+        free.remove(slot);
+        if (calendar == null)
+            return;
+        // das Bit steht für die ganze Viertelstunde und bleibt, solange es darin noch ein freies Appointment gibt
+        LocalDateTime start = slot.time.truncatedTo(ChronoUnit.MINUTES)
+                .withMinute(slot.time.getMinute() / OccupancyCalendar.SLOT_MINUTES * OccupancyCalendar.SLOT_MINUTES);
+        LocalDateTime end = start.plusMinutes(OccupancyCalendar.SLOT_MINUTES);
+        if (free.subSet(Slot.bound(start, Integer.MIN_VALUE, slot.providerId), Slot.bound(end, Integer.MIN_VALUE, slot.providerId)).isEmpty())
+            calendar.setFree(slot.providerId, slot.time, false);
+    }
+
+    /**
+     * Ersetzt alle freien Appointments eines Providers, z.B. nach einer Änderung des Providers.
+     * Ist <code>exists</code> <code>false</code>, wird der Provider entfernt. Appointments mit einer neueren Änderung
+     * als <code>sequence</code> bleiben unverändert.
+     */
+    private void replaceProvider(int providerId, boolean exists, ProviderType type, String address,
+                                 Collection<AppointmentSlot> free, long sequence) {
+        synchronized (lockOf(providerId)) {
+            // die Transaktion hat alle freien Appointments des Providers gelesen, laden ist nicht mehr nötig
+            loaded.add(providerId);
+            ProviderSlots previous = byProvider.get(providerId);
+            ProviderSlots next = null;
+            if (exists) {
+                next = previous != null && previous.sequence > sequence
+                        ? new ProviderSlots(previous.type, previous.address, previous.sequence)
+                        : new ProviderSlots(type, address, sequence);
+            }
+            Set<Integer> listed = new HashSet<>();
+            for (AppointmentSlot slot : free) {
+                listed.add(slot.appointmentId());
+            }
+            if (previous != null) {
+                for (Slot slot : previous.free) {
+                    if (slot.sequence > sequence && next != null)
+                        next.free.add(slot);
+                    else if (!listed.contains(slot.id))
+                        byAppointment.replace(slot.id, slot, tombstone(slot.id, providerId, sequence));
+                }
+            }
+            if (next == null)
+                byProvider.remove(providerId);
+            else
+                byProvider.put(providerId, next);
+            if (calendar != null) {
+                calendar.clearProvider(providerId);
+                if (next != null)
+                    next.free.forEach(this::markFree);
+            }
+            for (AppointmentSlot slot : free) {
+                add(slot, sequence);
+            }
+        }
+    }
+
+    /**
+     * Leert den Index. Ein {@link OccupancyCalendar} bleibt dabei unverändert.
+     */
+    void clear() {
+        byProvider.clear();
+        byAppointment.clear();
+        tombstones.clear();
+        loaded.clear();
+        loadedTypes.clear();
+    }
+
+    List<AppointmentSlot> findFree(int providerId, LocalDateTime from, LocalDateTime to) {
+        ensureLoaded(providerId);
+        ProviderSlots provider = byProvider.get(providerId);
+        List<AppointmentSlot> result = new ArrayList<>();
+        if (provider != null && !from.isAfter(to))
+            collect(providerId, provider, from, to, result);
+        return result;
+    }
+
+    List<AppointmentSlot> findFree(ProviderType type, LocalDateTime from, LocalDateTime to) {
+        List<AppointmentSlot> result = new ArrayList<>();
+        if (from.isAfter(to))
+            return result;
+        ensureLoaded(type);
+        for (Map.Entry<Integer, ProviderSlots> entry : byProvider.entrySet()) {
+            if (entry.getValue().type == type)
+                collect(entry.getKey(), entry.getValue(), from, to, result);
+        }
+        result.sort(Comparator.comparing(AppointmentSlot::time).thenComparing(AppointmentSlot::appointmentId));
+        return result;
+    }
+
+    /**
+     * @return die IDs aller als frei bekannten Appointments, je Provider - für den Abgleich mit der Datenbank.
+     *         Noch nicht geladene Provider fehlen.
+     */
+    Map<Integer, Set<Integer>> freeIdsByProvider() {
+        Map<Integer, Set<Integer>> result = new HashMap<>();
+        for (Slot slot : byAppointment.values()) {
+            if (slot.free)
+                result.computeIfAbsent(slot.providerId, id -> new HashSet<>()).add(slot.id);
+        }
+        return result;
+    }
+
+    private NavigableSet<Slot> slotsOf(int providerId) {
+        ProviderSlots provider = byProvider.get(providerId);
+        return provider != null ? provider.free : new ConcurrentSkipListSet<>(ORDER);
+    }
+
+    private static void collect(int providerId, ProviderSlots provider, LocalDateTime from, LocalDateTime to,
+                                List<AppointmentSlot> result) {
+        Slot lower = Slot.bound(from, Integer.MIN_VALUE, providerId);
+        Slot upper = Slot.bound(to, Integer.MAX_VALUE, providerId);
+        for (Slot slot : provider.free.subSet(lower, true, upper, true)) {
+            result.add(new AppointmentSlot(slot.id, slot.time, providerId, provider.type, provider.address));
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Zählt für die Schlüsselzugriffe des {@link AppointmentRepository}, wie oft eine Entity aus dem Shared Cache
+ * geliefert werden konnte (Hit) und wie oft sie aus der Datenbank gelesen werden musste (Miss).
+ */
+public final class CacheStatistics {
+
+    private final Map<Class<?>, LongAdder> hits = new ConcurrentHashMap<>();
+    private final Map<Class<?>, LongAdder> misses = new ConcurrentHashMap<>();
+
+    void record(Class<?> type, boolean hit) {
+        (hit ? hits : misses).computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public long getHits(Class<?> type) {
+        LongAdder counter = hits.get(type);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getMisses(Class<?> type) {
+        LongAdder counter = misses.get(type);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * @return Anteil der Hits an allen Zugriffen auf <code>type</code>, oder 0 falls es noch keine Zugriffe gab.
+     */
+    public double getHitRatio(Class<?> type) {
+        long hit = getHits(type);
+        long total = hit + getMisses(type);
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public void reset() {
+        hits.clear();
+        misses.clear();
+    }
+}
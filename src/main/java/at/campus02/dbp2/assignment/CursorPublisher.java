@@ -0,0 +1,131 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Liefert das Ergebnis einer Abfrage als {@link Flow.Publisher} über einen Cursor aus {@link CursorStreams}.
+ * <p>Jeder Subscriber bekommt einen eigenen Cursor, der erst beim ersten <code>request</code> geöffnet wird.
+ * Die Blockgröße des Cursors entspricht dieser ersten Anforderung (höchstens <code>maxFetchSize</code>), weitere
+ * Blöcke werden erst gelesen, wenn der Subscriber wieder Elemente anfordert. Die Elemente werden in dem Thread
+ * geliefert, der <code>request</code> aufruft - ein langsamer Subscriber bremst damit direkt die Datenbank.
+ * Nach dem letzten Element, einem Fehler oder <code>cancel</code> wird der Cursor geschlossen.
+ */
+final class CursorPublisher<T> implements Flow.Publisher<T> {
+
+    private final IntFunction<Stream<T>> open;
+    private final int maxFetchSize;
+
+    CursorPublisher(IntFunction<Stream<T>> open, int maxFetchSize) {
+        this.open = open;
+        this.maxFetchSize = maxFetchSize;
+    }
+
+    static <T> CursorPublisher<T> empty() {
+        return new CursorPublisher<>(fetchSize -> Stream.empty(), 1);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new CursorSubscription<>(subscriber, open, maxFetchSize));
+    }
+
+    private static final class CursorSubscription<T> implements Flow.Subscription {
+        private final Flow.Subscriber<? super T> subscriber;
+        private final IntFunction<Stream<T>> open;
+        private final int maxFetchSize;
+        private final AtomicLong demand = new AtomicLong();
+        // Anzahl der Signale seit dem letzten Durchlauf von drain - nur wer sie von 0 weg erhöht, liefert aus
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private boolean done;
+        private Stream<T> stream;
+        private Iterator<T> rows;
+
+        CursorSubscription(Flow.Subscriber<? super T> subscriber, IntFunction<Stream<T>> open, int maxFetchSize) {
+            this.subscriber = subscriber;
+            this.open = open;
+            this.maxFetchSize = maxFetchSize;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested count must be positive, was " + n);
+            } else {
+                demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (pending.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                emit();
+                missed = pending.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (done)
+                return;
+            if (cancelled) {
+                finish();
+                return;
+            }
+            if (invalidRequest != null) {
+                finish();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            long requested = demand.get();
+            if (requested == 0)
+                return;
+
+            try {
+                if (rows == null) {
+                    stream = open.apply((int) Math.min(requested, maxFetchSize));
+                    rows = stream.iterator();
+                }
+                long emitted = 0;
+                while (emitted < requested && !cancelled && invalidRequest == null && rows.hasNext()) {
+                    subscriber.onNext(rows.next());
+                    emitted++;
+                }
+                if (requested != Long.MAX_VALUE)
+                    demand.addAndGet(-emitted);
+                if (emitted < requested && !cancelled && invalidRequest == null) {
+                    finish();
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                finish();
+                subscriber.onError(e);
+            }
+        }
+
+        private void finish() {
+            done = true;
+            rows = null;
+            if (stream != null) {
+                stream.close();
+                stream = null;
+            }
+        }
+    }
+}
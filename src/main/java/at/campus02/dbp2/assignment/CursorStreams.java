@@ -0,0 +1,66 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Liefert das Ergebnis einer Abfrage als {@link Stream} über einen EclipseLink-Cursor.
+ * Es werden immer nur <code>fetchSize</code> Zeilen im Speicher gehalten: nach jedem Block werden die gelesenen Objekte
+ * aus dem Cursor und dem EntityManager entfernt, der Shared Cache wird für diese Abfragen nicht befüllt.
+ * Der Stream gehört dem Aufrufer - erst <code>close()</code> schließt den Cursor und den EntityManager.
+ */
+final class CursorStreams {
+
+    private CursorStreams() {
+    }
+
+    static <T> Stream<T> of(EntityManager manager, TypedQuery<T> query, Class<T> type, int fetchSize) {
+        CursoredStream cursor;
+        try {
+            query.setHint(QueryHints.CURSOR, HintValues.TRUE);
+            query.setHint(QueryHints.CURSOR_INITIAL_SIZE, fetchSize);
+            query.setHint(QueryHints.CURSOR_PAGE_SIZE, fetchSize);
+            query.setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize);
+            query.setHint(QueryHints.MAINTAIN_CACHE, HintValues.FALSE);
+            cursor = (CursoredStream) query.getSingleResult();
+        } catch (RuntimeException e) {
+            manager.close();
+            throw e;
+        }
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int sinceRelease;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (!cursor.hasNext())
+                    return false;
+                T next = type.cast(cursor.next());
+                if (++sinceRelease >= fetchSize) {
+                    cursor.releasePrevious();
+                    manager.clear();
+                    sinceRelease = 0;
+                }
+                action.accept(next);
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            try {
+                cursor.close();
+            } finally {
+                manager.close();
+            }
+        });
+    }
+}
@@ -1,22 +1,45 @@
 package at.campus02.dbp2.assignment;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.NamedQuery;
+import java.util.Locale;
 import java.util.Objects;
 
 @NamedQuery(
         name = "Customer.findByLastname",
         query = "select c from Customer c "+
-                " where lower(c.lastname) like lower(:lastname) " +
+                " where c.lastnameSearch like :lastname escape '\\' " +
+                " order by c.lastname")
+@NamedQuery(
+        name = "Customer.findByLastnameAndFirstname",
+        query = "select c from Customer c "+
+                " where c.lastnameSearch like :lastname escape '\\' " +
+                " and c.firstnameSearch like :firstname escape '\\' " +
                 " order by c.lastname")
+@NamedQuery(
+        name = "Customer.findAll",
+        query = "select c from Customer c order by c.email")
 
 @Entity
+@Cacheable
+// bei jedem create, update, delete und reserve gelesen
+@Cache(type = CacheType.SOFT_WEAK, size = 10000, expiry = 600000)
 public class Customer {
     @Id
     private String email;
     private String firstname;
     private String lastname;
+    // normalisierte Kopien für die indizierte Suche, siehe findCustomersBy
+    @Column(name = "FIRSTNAME_SEARCH")
+    private String firstnameSearch;
+    @Column(name = "LASTNAME_SEARCH")
+    private String lastnameSearch;
 
     public Customer() {
 
@@ -40,6 +63,7 @@ public class Customer {
 
     public void setFirstname(String firstname) {
         this.firstname = firstname;
+        this.firstnameSearch = normalize(firstname);
     }
 
     public String getLastname() {
@@ -48,6 +72,11 @@ public class Customer {
 
     public void setLastname(String lastname) {
         this.lastname = lastname;
+        this.lastnameSearch = normalize(lastname);
+    }
+
+    static String normalize(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
     }
 
     @Override
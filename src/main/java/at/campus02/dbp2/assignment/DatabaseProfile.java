@@ -0,0 +1,94 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.SharedCacheMode;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wie die Persistence Unit <code>assignment</code> auf die Derby-Datenbank zugreift.
+ * <ul>
+ *     <li>{@link #EMBEDDED}: die Datenbank läuft im eigenen Prozess, wie in der <code>persistence.xml</code>
+ *     konfiguriert. Nur ein Prozess kann sie öffnen.</li>
+ *     <li>{@link #NETWORK}: die Datenbank läuft in einem Derby Network Server (<code>gradle derbyServer</code>),
+ *     mehrere Prozesse können sie gleichzeitig verwenden. Weil andere Prozesse jederzeit schreiben können, ist der
+ *     Shared Cache abgeschaltet und es wird kein {@link OccupancyCalendar} geführt. Reservieren und Stornieren
+ *     bleiben über Prozesse hinweg korrekt, die Suche nach freien Slots sieht aber nur die Änderungen des eigenen
+ *     Prozesses seit dessen Start.</li>
+ * </ul>
+ * Die Connection Pools (<code>eclipselink.connection-pool.default.*</code> für Schreibzugriffe,
+ * <code>eclipselink.connection-pool.read.*</code> für Lesezugriffe) gelten für beide Profile.
+ * <p>Wie in der <code>persistence.xml</code> bleibt eine bestehende Datenbank beim Start erhalten, das Schema wird
+ * nur geprüft und ergänzt (siehe {@link SchemaBootstrap}). Erst mit der System Property
+ * {@value #SCHEMA}<code>=recreate</code> legt der Start die Tabellen neu an und löscht damit alle Daten - mit dem
+ * Profil {@link #NETWORK} darf das nur der erste Prozess.
+ */
+public enum DatabaseProfile {
+    EMBEDDED,
+    NETWORK;
+
+    public static final String PROFILE = "at.campus02.dbp2.database.profile";
+    public static final String HOST = "at.campus02.dbp2.database.host";
+    public static final String PORT = "at.campus02.dbp2.database.port";
+    public static final String SCHEMA = "at.campus02.dbp2.database.schema";
+    public static final String DEFAULT_HOST = "localhost";
+    public static final int DEFAULT_PORT = 1527;
+
+    static final String PERSISTENCE_UNIT = "assignment";
+    static final String DATABASE = "database";
+
+    /**
+     * @return die Properties, mit denen dieses Profil die <code>persistence.xml</code> überschreibt.
+     */
+    public Map<String, Object> properties(String host, int port) {
+        Map<String, Object> properties = new HashMap<>();
+        if (this == NETWORK) {
+            properties.put(PersistenceUnitProperties.JDBC_URL,
+                    "jdbc:derby://" + host + ":" + port + "/" + DATABASE + ";create=true");
+            properties.put(PersistenceUnitProperties.JDBC_DRIVER, "org.apache.derby.jdbc.ClientDriver");
+            // der Client braucht einen Benutzer - APP ist auch der Benutzer und das Schema der eingebetteten Datenbank
+            properties.put(PersistenceUnitProperties.JDBC_USER, "APP");
+            properties.put(PersistenceUnitProperties.JDBC_PASSWORD, "APP");
+            properties.put(PersistenceUnitProperties.SHARED_CACHE_MODE, SharedCacheMode.NONE.name());
+            properties.put(AppointmentRepositoryFactory.OCCUPANCY_FILE, "");
+        }
+        return properties;
+    }
+
+    /**
+     * @return das Profil aus der System Property {@value #PROFILE} (<code>embedded</code> oder <code>network</code>),
+     *         ohne Angabe {@link #EMBEDDED}.
+     * @throws IllegalArgumentException falls es kein solches Profil gibt.
+     */
+    public static DatabaseProfile current() {
+        String profile = System.getProperty(PROFILE, EMBEDDED.name());
+        try {
+            return valueOf(profile.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown database profile " + profile, e);
+        }
+    }
+
+    /**
+     * Erzeugt die EntityManagerFactory für das {@link #current() aktuelle} Profil, Host und Port des Network Servers
+     * kommen aus den System Properties {@value #HOST} und {@value #PORT}.
+     * @param overrides weitere Properties, die Vorrang vor dem Profil haben.
+     * @throws IllegalArgumentException falls {@value #SCHEMA} weder <code>recreate</code> noch <code>preserve</code> ist.
+     */
+    public static EntityManagerFactory createEntityManagerFactory(Map<String, Object> overrides) {
+        Map<String, Object> properties = current().properties(
+                System.getProperty(HOST, DEFAULT_HOST),
+                Integer.getInteger(PORT, DEFAULT_PORT));
+        String schema = System.getProperty(SCHEMA, "preserve");
+        if (schema.equalsIgnoreCase("recreate")) {
+            properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+        } else if (!schema.equalsIgnoreCase("preserve")) {
+            throw new IllegalArgumentException("Unknown schema mode " + schema);
+        }
+        properties.putAll(overrides);
+        return Persistence.createEntityManagerFactory(PERSISTENCE_UNIT, properties);
+    }
+}
@@ -0,0 +1,71 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityGraph;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+/**
+ * Legt fest, welche Beziehungen die Appointment-Finder mit den Appointments laden. Customer und Provider eines
+ * Appointments sind <code>LAZY</code>, jeder Plan entspricht einem <code>@NamedEntityGraph</code> an
+ * {@link Appointment}.
+ * <ul>
+ *   <li> <code>SLOT_ONLY</code> ("slot-only") lädt nur die Appointments.
+ *   <li> <code>SLOT_WITH_PROVIDER</code> ("slot-with-provider") lädt zusätzlich die Provider.
+ *   <li> <code>BOOKING</code> ("booking") lädt zusätzlich Provider und Customer.
+ * </ul>
+ * Die Beziehungen eines Plans werden in derselben Abfrage per <code>LEFT JOIN FETCH</code> gelesen, die Zahl der
+ * SQL-Anweisungen eines Finders hängt daher nicht von der Anzahl der Ergebnisse ab: eine für
+ * <code>findAppointments</code> und <code>getAppointmentsFor</code>, zwei für <code>findAppointmentsAt</code>, das
+ * vorher die Kandidaten im Trigramm-Index der Adressen sucht.
+ * Nicht geladene Beziehungen werden erst beim Zugriff einzeln gelesen.
+ */
+public enum FetchPlan {
+    SLOT_ONLY("slot-only"),
+    SLOT_WITH_PROVIDER("slot-with-provider"),
+    BOOKING("booking");
+
+    private final String graph;
+
+    FetchPlan(String graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * @return der Name des <code>@NamedEntityGraph</code> an {@link Appointment}.
+     */
+    public String getGraph() {
+        return graph;
+    }
+
+    /**
+     * Setzt den Entity Graph als Load Graph der Abfrage und liest dessen Beziehungen per Join mit.
+     * Die Abfrage muss Appointments mit dem Alias <code>a</code> liefern.
+     */
+    <T> TypedQuery<T> apply(EntityManager manager, TypedQuery<T> query) {
+        return apply(manager, query, false);
+    }
+
+    /**
+     * Wie {@link #apply(EntityManager, TypedQuery)}, für Abfragen mit <code>a.customer is null</code>: der Customer
+     * wird nicht mitgelesen, da EclipseLink den Join sonst trotz <code>LEFT_FETCH</code> als Inner Join erzeugt und
+     * die Abfrage kein Appointment mehr liefert.
+     */
+    <T> TypedQuery<T> applyToFree(EntityManager manager, TypedQuery<T> query) {
+        return apply(manager, query, true);
+    }
+
+    private <T> TypedQuery<T> apply(EntityManager manager, TypedQuery<T> query, boolean free) {
+        EntityGraph<?> entityGraph = manager.getEntityGraph(graph);
+        query.setHint(QueryHints.JPA_LOAD_GRAPH, entityGraph);
+        // nur to-one Beziehungen, der Join vervielfacht daher keine Zeilen und verträgt setMaxResults
+        for (AttributeNode<?> node : entityGraph.getAttributeNodes()) {
+            if (free && node.getAttributeName().equals("customer"))
+                continue;
+            query.setHint(QueryHints.LEFT_FETCH, "a." + node.getAttributeName());
+        }
+        return query;
+    }
+}
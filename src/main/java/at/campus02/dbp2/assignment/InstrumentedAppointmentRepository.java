@@ -0,0 +1,330 @@
+package at.campus02.dbp2.assignment;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Misst für jede Methode eines {@link AppointmentRepository} Aufrufe, Fehler und Latenzen und gibt die Aufrufe
+ * unverändert weiter. Die Messwerte liefert {@link #getMetrics()}, zusätzlich wird je Methode ein
+ * {@link RepositoryOperationMXBean} registriert, das bis {@link #close()} über JMX sichtbar ist.
+ * <p>Bei den Stream- und Publisher-Methoden wird nur die Zeit bis zur Rückgabe gemessen, nicht das spätere Lesen.
+ * Ein Aufruf zählt als Fehler, wenn er mit einer Exception endet.
+ * <p>Mit einem {@link SqlProfiler} werden zusätzlich die SQL-Anweisungen jedes Aufrufs der jeweiligen Methode
+ * zugeordnet, siehe {@link SqlProfiler#snapshot(String)}.
+ */
+public class InstrumentedAppointmentRepository implements AppointmentRepository {
+
+    private final AppointmentRepository repository;
+    private final RepositoryMetrics metrics = new RepositoryMetrics();
+    private final SqlProfiler profiler;
+
+    private final RepositoryMetrics.Operation createCustomer;
+    private final RepositoryMetrics.Operation readCustomer;
+    private final RepositoryMetrics.Operation updateCustomer;
+    private final RepositoryMetrics.Operation deleteCustomer;
+    private final RepositoryMetrics.Operation deleteCustomers;
+    private final RepositoryMetrics.Operation createProvider;
+    private final RepositoryMetrics.Operation createAll;
+    private final RepositoryMetrics.Operation createAllBatched;
+    private final RepositoryMetrics.Operation readProvider;
+    private final RepositoryMetrics.Operation updateProvider;
+    private final RepositoryMetrics.Operation deleteProvider;
+    private final RepositoryMetrics.Operation findCustomersBy;
+    private final RepositoryMetrics.Operation findCustomersByMode;
+    private final RepositoryMetrics.Operation findProvidersBy;
+    private final RepositoryMetrics.Operation findAppointmentsAt;
+    private final RepositoryMetrics.Operation findAppointmentsAtPlan;
+    private final RepositoryMetrics.Operation findAppointments;
+    private final RepositoryMetrics.Operation findAppointmentsPlan;
+    private final RepositoryMetrics.Operation findAppointmentsPage;
+    private final RepositoryMetrics.Operation findAppointmentsPagePlan;
+    private final RepositoryMetrics.Operation findSlotsAt;
+    private final RepositoryMetrics.Operation findSlots;
+    private final RepositoryMetrics.Operation findFreeSlotsByProvider;
+    private final RepositoryMetrics.Operation findFreeSlotsByType;
+    private final RepositoryMetrics.Operation streamAppointments;
+    private final RepositoryMetrics.Operation streamCustomers;
+    private final RepositoryMetrics.Operation streamCustomersBy;
+    private final RepositoryMetrics.Operation publishAppointments;
+    private final RepositoryMetrics.Operation publishAppointmentsAt;
+    private final RepositoryMetrics.Operation publishProvidersBy;
+    private final RepositoryMetrics.Operation publishAppointmentsFor;
+    private final RepositoryMetrics.Operation getAppointmentsFor;
+    private final RepositoryMetrics.Operation getAppointmentsForPlan;
+    private final RepositoryMetrics.Operation reserve;
+    private final RepositoryMetrics.Operation cancel;
+
+    /**
+     * @param repository das Repository, an das alle Aufrufe weitergegeben werden.
+     * @param name Name für die JMX-Registrierung, muss innerhalb der JVM eindeutig sein.
+     * @throws IllegalArgumentException falls <code>name</code> in einem JMX-Namen nicht erlaubt ist.
+     * @throws IllegalStateException falls unter diesem Namen bereits ein Repository registriert ist.
+     */
+    public InstrumentedAppointmentRepository(AppointmentRepository repository, String name) {
+        this(repository, name, null);
+    }
+
+    /**
+     * @param profiler ordnet die SQL-Anweisungen den Methoden zu, darf <code>null</code> sein.
+     * @see SqlProfiler#install(javax.persistence.EntityManagerFactory)
+     */
+    public InstrumentedAppointmentRepository(AppointmentRepository repository, String name, SqlProfiler profiler) {
+        this.repository = repository;
+        this.profiler = profiler;
+        this.createCustomer = metrics.operation("create(Customer)");
+        this.readCustomer = metrics.operation("read(String)");
+        this.updateCustomer = metrics.operation("update(Customer)");
+        this.deleteCustomer = metrics.operation("delete(Customer)");
+        this.deleteCustomers = metrics.operation("deleteCustomers(Collection)");
+        this.createProvider = metrics.operation("create(Provider)");
+        this.createAll = metrics.operation("createAll(Collection)");
+        this.createAllBatched = metrics.operation("createAll(Collection,int)");
+        this.readProvider = metrics.operation("read(Integer)");
+        this.updateProvider = metrics.operation("update(Provider)");
+        this.deleteProvider = metrics.operation("delete(Provider)");
+        this.findCustomersBy = metrics.operation("findCustomersBy(String,String)");
+        this.findCustomersByMode = metrics.operation("findCustomersBy(String,String,MatchMode)");
+        this.findProvidersBy = metrics.operation("findProvidersBy(ProviderType,String)");
+        this.findAppointmentsAt = metrics.operation("findAppointmentsAt(String)");
+        this.findAppointmentsAtPlan = metrics.operation("findAppointmentsAt(String,FetchPlan)");
+        this.findAppointments = metrics.operation("findAppointments(LocalDateTime,LocalDateTime)");
+        this.findAppointmentsPlan = metrics.operation("findAppointments(LocalDateTime,LocalDateTime,FetchPlan)");
+        this.findAppointmentsPage = metrics.operation("findAppointments(LocalDateTime,LocalDateTime,int,Token)");
+        this.findAppointmentsPagePlan = metrics.operation("findAppointments(LocalDateTime,LocalDateTime,int,Token,FetchPlan)");
+        this.findSlotsAt = metrics.operation("findSlotsAt(String)");
+        this.findSlots = metrics.operation("findSlots(LocalDateTime,LocalDateTime)");
+        this.findFreeSlotsByProvider = metrics.operation("findFreeSlotsByProvider(Integer,LocalDateTime,LocalDateTime)");
+        this.findFreeSlotsByType = metrics.operation("findFreeSlotsByType(ProviderType,LocalDateTime,LocalDateTime)");
+        this.streamAppointments = metrics.operation("streamAppointments(LocalDateTime,LocalDateTime,int)");
+        this.streamCustomers = metrics.operation("streamCustomers(int)");
+        this.streamCustomersBy = metrics.operation("streamCustomersBy(String,String,MatchMode,int)");
+        this.publishAppointments = metrics.operation("publishAppointments(LocalDateTime,LocalDateTime)");
+        this.publishAppointmentsAt = metrics.operation("publishAppointmentsAt(String)");
+        this.publishProvidersBy = metrics.operation("publishProvidersBy(ProviderType,String)");
+        this.publishAppointmentsFor = metrics.operation("publishAppointmentsFor(Customer)");
+        this.getAppointmentsFor = metrics.operation("getAppointmentsFor(Customer)");
+        this.getAppointmentsForPlan = metrics.operation("getAppointmentsFor(Customer,FetchPlan)");
+        this.reserve = metrics.operation("reserve(Appointment,Customer)");
+        this.cancel = metrics.operation("cancel(Appointment,Customer)");
+        metrics.registerMBeans(name);
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public SqlProfiler getProfiler() {
+        return profiler;
+    }
+
+    private <T> T timed(RepositoryMetrics.Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = profiler == null ? call.get() : profiler.profile(operation.getOperation(), call);
+            failed = false;
+            return result;
+        } finally {
+            operation.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public boolean create(Customer customer) {
+        return timed(createCustomer, () -> repository.create(customer));
+    }
+
+    @Override
+    public Customer read(String email) {
+        return timed(readCustomer, () -> repository.read(email));
+    }
+
+    @Override
+    public Customer update(Customer customer) {
+        return timed(updateCustomer, () -> repository.update(customer));
+    }
+
+    @Override
+    public boolean delete(Customer customer) {
+        return timed(deleteCustomer, () -> repository.delete(customer));
+    }
+
+    @Override
+    public int deleteCustomers(Collection<String> emails) {
+        return timed(deleteCustomers, () -> repository.deleteCustomers(emails));
+    }
+
+    @Override
+    public boolean create(Provider provider) {
+        return timed(createProvider, () -> repository.create(provider));
+    }
+
+    @Override
+    public int createAll(Collection<Provider> providers) {
+        return timed(createAll, () -> repository.createAll(providers));
+    }
+
+    @Override
+    public int createAll(Collection<Provider> providers, int batchSize) {
+        return timed(createAllBatched, () -> repository.createAll(providers, batchSize));
+    }
+
+    @Override
+    public Provider read(Integer id) {
+        return timed(readProvider, () -> repository.read(id));
+    }
+
+    @Override
+    public Provider update(Provider provider) {
+        return timed(updateProvider, () -> repository.update(provider));
+    }
+
+    @Override
+    public boolean delete(Provider provider) {
+        return timed(deleteProvider, () -> repository.delete(provider));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname) {
+        return timed(findCustomersBy, () -> repository.findCustomersBy(lastname, firstname));
+    }
+
+    @Override
+    public List<Customer> findCustomersBy(String lastname, String firstname, MatchMode mode) {
+        return timed(findCustomersByMode, () -> repository.findCustomersBy(lastname, firstname, mode));
+    }
+
+    @Override
+    public List<Provider> findProvidersBy(ProviderType type, String addressPart) {
+        return timed(findProvidersBy, () -> repository.findProvidersBy(type, addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart) {
+        return timed(findAppointmentsAt, () -> repository.findAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public List<Appointment> findAppointmentsAt(String addressPart, FetchPlan plan) {
+        return timed(findAppointmentsAtPlan, () -> repository.findAppointmentsAt(addressPart, plan));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to) {
+        return timed(findAppointments, () -> repository.findAppointments(from, to));
+    }
+
+    @Override
+    public List<Appointment> findAppointments(LocalDateTime from, LocalDateTime to, FetchPlan plan) {
+        return timed(findAppointmentsPlan, () -> repository.findAppointments(from, to, plan));
+    }
+
+    @Override
+    public AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after) {
+        return timed(findAppointmentsPage, () -> repository.findAppointments(from, to, pageSize, after));
+    }
+
+    @Override
+    public AppointmentPage findAppointments(LocalDateTime from, LocalDateTime to, int pageSize, AppointmentPage.Token after,
+                                            FetchPlan plan) {
+        return timed(findAppointmentsPagePlan, () -> repository.findAppointments(from, to, pageSize, after, plan));
+    }
+
+    @Override
+    public List<AppointmentSlot> findSlotsAt(String addressPart) {
+        return timed(findSlotsAt, () -> repository.findSlotsAt(addressPart));
+    }
+
+    @Override
+    public List<AppointmentSlot> findSlots(LocalDateTime from, LocalDateTime to) {
+        return timed(findSlots, () -> repository.findSlots(from, to));
+    }
+
+    @Override
+    public List<AppointmentSlot> findFreeSlotsByProvider(Integer providerId, LocalDateTime from, LocalDateTime to) {
+        return timed(findFreeSlotsByProvider, () -> repository.findFreeSlotsByProvider(providerId, from, to));
+    }
+
+    @Override
+    public List<AppointmentSlot> findFreeSlotsByType(ProviderType type, LocalDateTime from, LocalDateTime to) {
+        return timed(findFreeSlotsByType, () -> repository.findFreeSlotsByType(type, from, to));
+    }
+
+    @Override
+    public Stream<Appointment> streamAppointments(LocalDateTime from, LocalDateTime to, int fetchSize) {
+        return timed(streamAppointments, () -> repository.streamAppointments(from, to, fetchSize));
+    }
+
+    @Override
+    public Stream<Customer> streamCustomers(int fetchSize) {
+        return timed(streamCustomers, () -> repository.streamCustomers(fetchSize));
+    }
+
+    @Override
+    public Stream<Customer> streamCustomersBy(String lastname, String firstname, MatchMode mode, int fetchSize) {
+        return timed(streamCustomersBy, () -> repository.streamCustomersBy(lastname, firstname, mode, fetchSize));
+    }
+
+    @Override
+    public Flow.Publisher<Appointment> publishAppointments(LocalDateTime from, LocalDateTime to) {
+        return timed(publishAppointments, () -> repository.publishAppointments(from, to));
+    }
+
+    @Override
+    public Flow.Publisher<Appointment> publishAppointmentsAt(String addressPart) {
+        return timed(publishAppointmentsAt, () -> repository.publishAppointmentsAt(addressPart));
+    }
+
+    @Override
+    public Flow.Publisher<Provider> publishProvidersBy(ProviderType type, String addressPart) {
+        return timed(publishProvidersBy, () -> repository.publishProvidersBy(type, addressPart));
+    }
+
+    @Override
+    public Flow.Publisher<Appointment> publishAppointmentsFor(Customer customer) {
+        return timed(publishAppointmentsFor, () -> repository.publishAppointmentsFor(customer));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer) {
+        return timed(getAppointmentsFor, () -> repository.getAppointmentsFor(customer));
+    }
+
+    @Override
+    public List<Appointment> getAppointmentsFor(Customer customer, FetchPlan plan) {
+        return timed(getAppointmentsForPlan, () -> repository.getAppointmentsFor(customer, plan));
+    }
+
+    @Override
+    public boolean reserve(Appointment appointment, Customer customer) {
+        return timed(reserve, () -> repository.reserve(appointment, customer));
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment, Customer customer) {
+        return timed(cancel, () -> repository.cancel(appointment, customer));
+    }
+
+    @Override
+    public OccupancyCalendar getOccupancyCalendar() {
+        return repository.getOccupancyCalendar();
+    }
+
+    @Override
+    public CacheStatistics getCacheStatistics() {
+        return repository.getCacheStatistics();
+    }
+
+    /**
+     * Entfernt die MBeans und schließt das dekorierte Repository.
+     */
+    @Override
+    public void close() {
+        metrics.unregisterMBeans();
+        repository.close();
+    }
+}
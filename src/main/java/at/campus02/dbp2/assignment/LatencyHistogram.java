@@ -0,0 +1,112 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramm für Latenzen in Nanosekunden mit log-linearen Buckets nach dem Vorbild von HdrHistogram:
+ * bis 128 ns ist jeder Wert ein eigener Bucket, darüber wird jede Zweierpotenz in 64 gleich breite Buckets geteilt.
+ * Ein Perzentil ist damit auf weniger als 1,6 % genau, Werte ab 2^43 ns (ca. 2,4 Stunden) landen im letzten Bucket.
+ * <p>Das Aufzeichnen ist lock-frei und erzeugt keine Objekte, das Auslesen sieht einen möglicherweise nicht ganz
+ * gleichzeitigen Stand der Buckets.
+ */
+final class LatencyHistogram {
+
+    private static final int LINEAR = 128;
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 7;
+    private static final int MAX_EXPONENT = 42;
+    static final int BUCKETS = LINEAR + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        total.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // ein anderer Thread hat gleichzeitig ein neues Maximum gesetzt
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return LINEAR + (exponent - MIN_EXPONENT) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * @return der größte Wert, der im Bucket <code>index</code> landet.
+     */
+    static long highestValueOf(int index) {
+        if (index < LINEAR)
+            return index;
+        int offset = index - LINEAR;
+        int exponent = MIN_EXPONENT + offset / SUB_BUCKETS;
+        long mantissa = SUB_BUCKETS + offset % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (mantissa << shift) + (1L << shift) - 1;
+    }
+
+    long getCount() {
+        return total.sum();
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    double getMean() {
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    long[] counts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    /**
+     * @return der Wert, unter dem der Anteil <code>quantile</code> der Werte in <code>counts</code> liegt
+     *         (höchstens <code>max</code>), oder 0 falls noch nichts aufgezeichnet wurde.
+     */
+    static long valueAt(long[] counts, double quantile, long max) {
+        long count = 0;
+        for (long bucket : counts) {
+            count += bucket;
+        }
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestValueOf(i), max);
+        }
+        return max;
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,32 @@
+package at.campus02.dbp2.assignment;
+
+/**
+ * Legt fest, wie ein Suchbegriff mit einem Namen verglichen wird. Verglichen wird immer case-insensitive.
+ * <ul>
+ *   <li> <code>EXACT</code> und <code>PREFIX</code> können einen Index verwenden.
+ *   <li> <code>CONTAINS</code> muss alle Einträge durchsuchen.
+ * </ul>
+ */
+public enum MatchMode {
+    EXACT, PREFIX, CONTAINS;
+
+    static final char ESCAPE = '\\';
+
+    /**
+     * Erzeugt das LIKE-Muster für den normalisierten Suchbegriff. Platzhalter im Suchbegriff werden maskiert.
+     */
+    String pattern(String value) {
+        String escaped = Customer.normalize(value)
+                .replace(String.valueOf(ESCAPE), "" + ESCAPE + ESCAPE)
+                .replace("%", ESCAPE + "%")
+                .replace("_", ESCAPE + "_");
+        switch (this) {
+            case EXACT:
+                return escaped;
+            case PREFIX:
+                return escaped + "%";
+            default:
+                return "%" + escaped + "%";
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package at.campus02.dbp2.assignment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Belegungskalender außerhalb des Heaps: je Provider und Tag ein Bitset mit einem Bit je Viertelstunde, das gesetzt ist,
+ * solange es in dieser Viertelstunde ein freies Appointment gibt.
+ * <p>Die Bitsets liegen in einer memory-mapped Datei und überleben damit einen Neustart. Lesende Methoden erzeugen keine
+ * Objekte. Erfasst werden nur Provider-IDs kleiner als <code>providers</code> und Tage ab <code>firstDay</code>
+ * innerhalb von <code>days</code> Tagen - alles andere wird ignoriert, siehe {@link #covers(int, LocalDateTime)}.
+ */
+public final class OccupancyCalendar {
+
+    static final int SLOT_MINUTES = 15;
+    private static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    private static final int LONGS_PER_DAY = (SLOTS_PER_DAY + 63) / 64;
+    private static final int BYTES_PER_DAY = LONGS_PER_DAY * Long.BYTES;
+
+    private static final long MAGIC = 0x4f43435550414e43L;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SLOT_MINUTES_OFFSET = 8;
+    private static final int FIRST_DAY_OFFSET = 16;
+    private static final int DAYS_OFFSET = 24;
+    private static final int PROVIDERS_OFFSET = 32;
+    private static final int FREE_COUNT_OFFSET = 40;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer buffer;
+    private final long firstDay;
+    private final int days;
+    private final int providers;
+    private volatile boolean restored;
+
+    private OccupancyCalendar(MappedByteBuffer buffer, long firstDay, int days, int providers, boolean restored) {
+        this.buffer = buffer;
+        this.firstDay = firstDay;
+        this.days = days;
+        this.providers = providers;
+        this.restored = restored;
+    }
+
+    /**
+     * Öffnet den Kalender in <code>file</code>. Passt eine vorhandene Datei nicht zu den Parametern, wird sie verworfen.
+     * @throws IllegalArgumentException falls <code>days</code> oder <code>providers</code> kleiner als 1 sind oder die
+     *         Datei größer als 2 GB würde.
+     */
+    static OccupancyCalendar open(Path file, LocalDate firstDay, int days, int providers) {
+        if (days < 1 || providers < 1)
+            throw new IllegalArgumentException("Days and providers must be at least 1");
+        long size = HEADER_SIZE + (long) days * providers * BYTES_PER_DAY;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Occupancy calendar must not exceed 2 GB");
+
+        try {
+            boolean restored = Files.exists(file) && Files.size(file) == size && matches(file, firstDay, days, providers);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                if (!restored) {
+                    // truncate first so that the new file is sparse and all bits are zero
+                    channel.truncate(0);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ByteOrder.nativeOrder());
+                if (!restored) {
+                    buffer.putLong(SLOT_MINUTES_OFFSET, SLOT_MINUTES);
+                    buffer.putLong(FIRST_DAY_OFFSET, firstDay.toEpochDay());
+                    buffer.putLong(DAYS_OFFSET, days);
+                    buffer.putLong(PROVIDERS_OFFSET, providers);
+                    buffer.putLong(FREE_COUNT_OFFSET, 0);
+                    buffer.putLong(MAGIC_OFFSET, MAGIC);
+                }
+                return new OccupancyCalendar(buffer, firstDay.toEpochDay(), days, providers, restored);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open occupancy calendar " + file, e);
+        }
+    }
+
+    private static boolean matches(Path file, LocalDate firstDay, int days, int providers) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the whole header
+            }
+            return header.getLong(MAGIC_OFFSET) == MAGIC
+                    && header.getLong(SLOT_MINUTES_OFFSET) == SLOT_MINUTES
+                    && header.getLong(FIRST_DAY_OFFSET) == firstDay.toEpochDay()
+                    && header.getLong(DAYS_OFFSET) == days
+                    && header.getLong(PROVIDERS_OFFSET) == providers;
+        }
+    }
+
+    /**
+     * @return <code>true</code>, falls eine passende Datei von einem früheren Prozess übernommen wurde.
+     */
+    boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Setzt alle Bits zurück. Der Kalender gilt danach nicht mehr als übernommen.
+     */
+    void clear() {
+        boolean wasRestored = restored;
+        restored = false;
+        // in einem übernommenen Kalender muss der Zähler nicht zu den Bits passen
+        if (!wasRestored && freeCount() == 0)
+            return;
+        for (int offset = HEADER_SIZE; offset < buffer.capacity(); offset += Long.BYTES) {
+            if ((long) LONGS.getVolatile(buffer, offset) != 0)
+                LONGS.setVolatile(buffer, offset, 0L);
+        }
+        LONGS.setVolatile(buffer, FREE_COUNT_OFFSET, 0L);
+    }
+
+    /**
+     * Schreibt die geänderten Seiten auf die Platte.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * @return Anzahl der gesetzten Bits, also der Viertelstunden mit mindestens einem freien Appointment.
+     */
+    public long freeCount() {
+        return (long) LONGS.getVolatile(buffer, FREE_COUNT_OFFSET);
+    }
+
+    /**
+     * @return Anzahl der gesetzten Bits, direkt in den Bitsets gezählt - unabhängig vom Zähler hinter
+     *         {@link #freeCount()}, der nach einem Absturz zwischen Bit und Zähler nicht mehr stimmen muss.
+     */
+    long countSetBits() {
+        long count = 0;
+        for (int offset = HEADER_SIZE; offset < buffer.capacity(); offset += Long.BYTES) {
+            count += Long.bitCount((long) LONGS.getVolatile(buffer, offset));
+        }
+        return count;
+    }
+
+    /**
+     * @return <code>true</code>, falls Provider und Zeitpunkt vom Kalender erfasst werden.
+     */
+    public boolean covers(int providerId, LocalDateTime time) {
+        return offsetOf(providerId, time.toLocalDate().toEpochDay()) >= 0;
+    }
+
+    public boolean isFree(int providerId, LocalDateTime time) {
+        int offset = offsetOf(providerId, time.toLocalDate().toEpochDay());
+        if (offset < 0)
+            return false;
+        int slot = slotOf(time);
+        long bits = (long) LONGS.getVolatile(buffer, offset + (slot >>> 6) * Long.BYTES);
+        return (bits & (1L << (slot & 63))) != 0;
+    }
+
+    /**
+     * @return Anzahl der freien Viertelstunden des Providers an diesem Tag.
+     */
+    public int countFree(int providerId, LocalDate day) {
+        int offset = offsetOf(providerId, day.toEpochDay());
+        if (offset < 0)
+            return 0;
+        int count = 0;
+        for (int i = 0; i < LONGS_PER_DAY; i++) {
+            count += Long.bitCount((long) LONGS.getVolatile(buffer, offset + i * Long.BYTES));
+        }
+        return count;
+    }
+
+    /**
+     * Sucht die erste freie Viertelstunde des Providers im Bereich [<code>from</code>, <code>to</code>].
+     * @return Beginn der Viertelstunde in Minuten seit 1.1.1970 (siehe {@link #toTime(long)}), oder -1.
+     */
+    public long nextFree(int providerId, LocalDateTime from, LocalDateTime to) {
+        long day = Math.max(from.toLocalDate().toEpochDay(), firstDay);
+        long lastDay = Math.min(to.toLocalDate().toEpochDay(), firstDay + days - 1);
+        long first = minuteOf(from);
+        long last = minuteOf(to);
+        for (; day <= lastDay; day++) {
+            int offset = offsetOf(providerId, day);
+            if (offset < 0)
+                return -1;
+            for (int i = 0; i < LONGS_PER_DAY; i++) {
+                long bits = (long) LONGS.getVolatile(buffer, offset + i * Long.BYTES);
+                while (bits != 0) {
+                    int slot = i * 64 + Long.numberOfTrailingZeros(bits);
+                    long minute = day * 24 * 60 + (long) slot * SLOT_MINUTES;
+                    if (minute > last)
+                        return -1;
+                    if (minute + SLOT_MINUTES > first)
+                        return minute;
+                    bits &= bits - 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public static LocalDateTime toTime(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Setzt bzw. löscht das Bit der Viertelstunde von <code>time</code>.
+     * @return <code>true</code>, falls sich das Bit dadurch geändert hat.
+     */
+    boolean setFree(int providerId, LocalDateTime time, boolean free) {
+        int offset = offsetOf(providerId, time.toLocalDate().toEpochDay());
+        if (offset < 0)
+            return false;
+        int slot = slotOf(time);
+        offset += (slot >>> 6) * Long.BYTES;
+        long mask = 1L << (slot & 63);
+        long previous;
+        long next;
+        do {
+            previous = (long) LONGS.getVolatile(buffer, offset);
+            next = free ? previous | mask : previous & ~mask;
+            if (next == previous)
+                return false;
+        } while (!LONGS.compareAndSet(buffer, offset, previous, next));
+        LONGS.getAndAdd(buffer, FREE_COUNT_OFFSET, free ? 1L : -1L);
+        return true;
+    }
+
+    /**
+     * Löscht alle Bits eines Providers.
+     */
+    void clearProvider(int providerId) {
+        if (providerId < 0 || providerId >= providers)
+            return;
+        for (int day = 0; day < days; day++) {
+            int offset = HEADER_SIZE + (int) ((providerId * (long) days + day) * BYTES_PER_DAY);
+            for (int i = 0; i < LONGS_PER_DAY; i++) {
+                long bits = (long) LONGS.getAndSet(buffer, offset + i * Long.BYTES, 0L);
+                if (bits != 0)
+                    LONGS.getAndAdd(buffer, FREE_COUNT_OFFSET, (long) -Long.bitCount(bits));
+            }
+        }
+    }
+
+    private int offsetOf(int providerId, long epochDay) {
+        long day = epochDay - firstDay;
+        if (providerId < 0 || providerId >= providers || day < 0 || day >= days)
+            return -1;
+        return HEADER_SIZE + (int) ((providerId * (long) days + day) * BYTES_PER_DAY);
+    }
+
+    private static int slotOf(LocalDateTime time) {
+        return (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    private static long minuteOf(LocalDateTime time) {
+        return time.toLocalDate().toEpochDay() * 24 * 60 + time.getHour() * 60 + time.getMinute();
+    }
+}
@@ -0,0 +1,10 @@
+package at.campus02.dbp2.assignment;
+
+/**
+ * Momentaufnahme der Messwerte einer Methode des {@link AppointmentRepository}, siehe {@link RepositoryMetrics}.
+ * Zeiten sind in Millisekunden, der Durchsatz in Aufrufen pro Sekunde seit dem Start bzw. dem letzten Reset.
+ */
+public record OperationStatistics(String operation, long calls, long errors, double callsPerSecond,
+                                  double meanMillis, double p50Millis, double p90Millis, double p99Millis,
+                                  double p999Millis, double maxMillis) {
+}
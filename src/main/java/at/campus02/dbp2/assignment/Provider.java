@@ -1,12 +1,31 @@
 package at.campus02.dbp2.assignment;
 
+import org.eclipse.persistence.annotations.Cache;
+import org.eclipse.persistence.annotations.CacheType;
+
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+
+@NamedQuery(
+        name = "Provider.findByTypeAndAddress",
+        query = "select p from Provider p " +
+                " where p.type = :type " +
+                " and lower(p.address) like lower(:addressPart)")
+@NamedQuery(
+        name = "Provider.findByTypeAndAddressCandidates",
+        query = "select p from Provider p " +
+                " where p.id in :providerIds " +
+                " and p.type = :type " +
+                " and lower(p.address) like lower(:addressPart)")
+
 @Entity
+@Cacheable
+@Cache(type = CacheType.SOFT_WEAK, size = 1000, expiry = 600000)
 public class Provider {
-    @Id @GeneratedValue
+    @Id @GeneratedValue(strategy = GenerationType.TABLE, generator = "ProviderIds")
+    @TableGenerator(name = "ProviderIds", allocationSize = 100)
     private Integer id;
     private ProviderType type;
     private String address;
@@ -0,0 +1,183 @@
+package at.campus02.dbp2.assignment;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aufrufzähler, Fehlerzähler und Latenz-Histogramme je Methode eines {@link InstrumentedAppointmentRepository}.
+ * Die Werte können als {@link OperationStatistics} abgefragt oder über JMX ({@link RepositoryOperationMXBean})
+ * beobachtet werden.
+ */
+public final class RepositoryMetrics {
+
+    static final String DOMAIN = "at.campus02.dbp2.assignment";
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+    Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    /**
+     * @return die Messwerte aller Methoden, sortiert nach Methode.
+     */
+    public List<OperationStatistics> snapshot() {
+        List<OperationStatistics> snapshot = new ArrayList<>();
+        for (Operation operation : operations.values()) {
+            snapshot.add(operation.snapshot());
+        }
+        snapshot.sort(Comparator.comparing(OperationStatistics::operation));
+        return snapshot;
+    }
+
+    /**
+     * @param operation die Methode samt Parametertypen, z.B. <code>findAppointmentsAt(String)</code>.
+     * @return die Messwerte dieser Methode, oder <code>null</code> falls es keine solche Methode gibt.
+     */
+    public OperationStatistics snapshot(String operation) {
+        Operation found = operations.get(operation);
+        return found == null ? null : found.snapshot();
+    }
+
+    public void reset() {
+        for (Operation operation : operations.values()) {
+            operation.reset();
+        }
+    }
+
+    /**
+     * Registriert für jede Methode ein {@link RepositoryOperationMXBean} beim Platform MBeanServer.
+     * @throws IllegalArgumentException falls <code>name</code> in einem JMX-Namen nicht erlaubt ist.
+     * @throws IllegalStateException falls unter diesem Namen bereits MBeans registriert sind.
+     */
+    void registerMBeans(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : operations.values()) {
+            ObjectName objectName;
+            try {
+                objectName = new ObjectName(DOMAIN + ":type=AppointmentRepository,name=" + name
+                        + ",operation=" + ObjectName.quote(operation.name));
+            } catch (JMException e) {
+                throw new IllegalArgumentException("Invalid repository name " + name, e);
+            }
+            try {
+                server.registerMBean(new StandardMBean(operation, RepositoryOperationMXBean.class, true), objectName);
+            } catch (JMException e) {
+                unregisterMBeans();
+                throw new IllegalStateException("Cannot register " + objectName, e);
+            }
+            registered.add(objectName);
+        }
+    }
+
+    void unregisterMBeans() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (JMException e) {
+                // bereits von außen entfernt
+            }
+        }
+        registered.clear();
+    }
+
+    static final class Operation implements RepositoryOperationMXBean {
+        private final String name;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private volatile long since = System.nanoTime();
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean failed) {
+            histogram.record(nanos);
+            if (failed)
+                errors.increment();
+        }
+
+        OperationStatistics snapshot() {
+            long[] counts = histogram.counts();
+            long max = histogram.getMax();
+            long calls = histogram.getCount();
+            double seconds = (System.nanoTime() - since) / 1e9;
+            return new OperationStatistics(name, calls, errors.sum(), seconds > 0 ? calls / seconds : 0,
+                    histogram.getMean() / 1e6,
+                    LatencyHistogram.valueAt(counts, 0.50, max) / 1e6,
+                    LatencyHistogram.valueAt(counts, 0.90, max) / 1e6,
+                    LatencyHistogram.valueAt(counts, 0.99, max) / 1e6,
+                    LatencyHistogram.valueAt(counts, 0.999, max) / 1e6,
+                    max / 1e6);
+        }
+
+        @Override
+        public String getOperation() {
+            return name;
+        }
+
+        @Override
+        public long getCalls() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getCallsPerSecond() {
+            return snapshot().callsPerSecond();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return histogram.getMean() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return snapshot().p50Millis();
+        }
+
+        @Override
+        public double getP90Millis() {
+            return snapshot().p90Millis();
+        }
+
+        @Override
+        public double getP99Millis() {
+            return snapshot().p99Millis();
+        }
+
+        @Override
+        public double getP999Millis() {
+            return snapshot().p999Millis();
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return histogram.getMax() / 1e6;
+        }
+
+        @Override
+        public void reset() {
+            histogram.reset();
+            errors.reset();
+            since = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package at.campus02.dbp2.assignment;
+
+/**
+ * JMX-Sicht auf die Messwerte einer Methode des {@link AppointmentRepository}, siehe {@link RepositoryMetrics}.
+ * Jede Methode wird unter
+ * <code>at.campus02.dbp2.assignment:type=AppointmentRepository,name=&lt;name&gt;,operation=&lt;methode&gt;</code>
+ * registriert, die Methode steht dabei unter Anführungszeichen, z.B. <code>operation="reserve(Appointment,Customer)"</code>.
+ */
+public interface RepositoryOperationMXBean {
+
+    String getOperation();
+
+    long getCalls();
+
+    long getErrors();
+
+    double getCallsPerSecond();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getP999Millis();
+
+    double getMaxMillis();
+
+    /**
+     * Setzt alle Zähler und das Histogramm dieser Methode zurück.
+     */
+    void reset();
+}
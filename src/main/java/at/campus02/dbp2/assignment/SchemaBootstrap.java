@@ -0,0 +1,244 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.databaseaccess.DatabasePlatform;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.sequencing.Sequence;
+import org.eclipse.persistence.sequencing.TableSequence;
+import org.eclipse.persistence.sessions.DatabaseSession;
+import org.eclipse.persistence.tools.schemaframework.DefaultTableGenerator;
+import org.eclipse.persistence.tools.schemaframework.FieldDefinition;
+import org.eclipse.persistence.tools.schemaframework.SchemaManager;
+import org.eclipse.persistence.tools.schemaframework.TableDefinition;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Versionierter Aufbau des Schemas beim Start, damit eine bestehende Datenbank nicht neu angelegt werden muss.
+ * <p>Zuerst wird das vorhandene Schema geprüft: alle Tabellen und Spalten der Entities samt Typ und Nullbarkeit,
+ * die Tabellen der ID-Generatoren, die {@link SchemaIndexes} und die Trigger der {@link AddressTrigrams}. Entspricht
+ * es der in SCHEMA_VERSION eingetragenen aktuellen {@link #VERSION}, ist der Start damit erledigt. Sonst werden nur die
+ * fehlenden Teile ergänzt - Tabellen und Spalten über den {@link SchemaManager} von EclipseLink, danach Indizes,
+ * Trigger und die abgeleiteten Suchspalten - und das Ergebnis erneut geprüft.
+ * <p>Mit <code>eclipselink.ddl-generation=none</code> aus der <code>persistence.xml</code> bleibt eine bestehende
+ * Datenbank so beim Start erhalten und eine neue wird vollständig angelegt; nur auf Wunsch (siehe
+ * {@link DatabaseProfile#SCHEMA}) legt EclipseLink die Tabellen mit <code>drop-and-create-tables</code> neu an und der
+ * Aufbau ergänzt danach Indizes und Trigger. Spalten mit falschem Typ oder falscher Nullbarkeit werden
+ * nicht verändert, der Start bricht dann ab.
+ * <p>Starten mehrere Prozesse gleichzeitig, legt nur einer SCHEMA_VERSION an bzw. trägt die Version ein - die
+ * anderen übernehmen das Ergebnis.
+ */
+final class SchemaBootstrap {
+
+    /**
+     * Version 1: Entities samt Suchspalten, Sekundär-Indizes und Trigramm-Trigger.
+     */
+    static final int VERSION = 1;
+    static final String VERSION_TABLE = "SCHEMA_VERSION";
+
+    private static final String TABLE_EXISTS = "X0Y32";
+    private static final String DUPLICATE_KEY = "23505";
+
+    /**
+     * Typ (ohne Länge) und Nullbarkeit einer Spalte.
+     */
+    private record Column(String type, boolean nullable) {
+        @Override
+        public String toString() {
+            return type + (nullable ? " NULL" : " NOT NULL");
+        }
+    }
+
+    private SchemaBootstrap() {
+    }
+
+    /**
+     * Prüft das Schema und ergänzt es, falls nötig.
+     * @return <code>true</code> falls etwas ergänzt wurde, <code>false</code> falls das Schema schon vollständig war.
+     * @throws IllegalStateException falls die Datenbank eine neuere Schema-Version hat oder nach dem Ergänzen
+     *                               noch immer etwas fehlt oder nicht zu den Entities passt.
+     */
+    static boolean ensure(EntityManagerFactory factory) {
+        EntityManager manager = factory.createEntityManager();
+        DatabaseSession session = JpaHelper.getDatabaseSession(factory);
+        try {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            int recorded = recordedVersion(connection);
+            if (recorded > VERSION)
+                throw new IllegalStateException("Database schema version " + recorded + " is newer than " + VERSION);
+            List<String> missing = missing(session, connection);
+            manager.getTransaction().commit();
+            if (recorded == VERSION && missing.isEmpty())
+                return false;
+
+            ((AbstractSession) session).log(SessionLog.INFO, SessionLog.DDL, "Migrating schema from version "
+                    + recorded + " to " + VERSION + ", missing: " + missing, null, null, false);
+            if (missing.stream().anyMatch(problem -> problem.startsWith("table") || problem.startsWith("column")))
+                new SchemaManager(session).extendDefaultTables(true);
+            SchemaIndexes.ensure(factory);
+            AddressTrigrams.ensure(factory);
+
+            manager.getTransaction().begin();
+            connection = manager.unwrap(Connection.class);
+            backfillSearchColumns(connection);
+            missing = missing(session, connection);
+            if (!missing.isEmpty())
+                throw new IllegalStateException("Schema does not match the entities after migration: " + missing.get(0));
+            if (recorded < VERSION)
+                recordVersion(connection);
+            manager.getTransaction().commit();
+            return true;
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot bootstrap schema", e);
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+            manager.close();
+        }
+    }
+
+    /**
+     * @return die höchste eingetragene Version, 0 falls noch keine eingetragen ist.
+     */
+    private static int recordedVersion(Connection connection) throws SQLException {
+        if (!tableExists(connection, VERSION_TABLE)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE " + VERSION_TABLE
+                        + " (VERSION INTEGER NOT NULL PRIMARY KEY, APPLIED TIMESTAMP NOT NULL)");
+                return 0;
+            } catch (SQLException e) {
+                // ein anderer Prozess hat die Tabelle seit der Prüfung angelegt, nur die Anweisung ist gescheitert
+                if (!TABLE_EXISTS.equals(e.getSQLState()))
+                    throw e;
+            }
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(VERSION) FROM " + VERSION_TABLE)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void recordVersion(Connection connection) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + VERSION_TABLE + " (VERSION, APPLIED) VALUES (?, ?)")) {
+            insert.setInt(1, VERSION);
+            insert.setTimestamp(2, new Timestamp(System.currentTimeMillis()));
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            // ein gleichzeitig gestarteter Prozess hat dieselbe Version bereits eingetragen
+            if (!DUPLICATE_KEY.equals(e.getSQLState()))
+                throw e;
+        }
+    }
+
+    /**
+     * @return was im Schema fehlt oder nicht zu den Entities passt, z.B. <code>column CUSTOMER.LASTNAME_SEARCH</code>
+     *         oder <code>type PROVIDER.TYPE: VARCHAR NULL instead of INTEGER NULL</code> - leer falls es vollständig ist.
+     */
+    static List<String> missing(DatabaseSession session, Connection connection) throws SQLException {
+        List<String> missing = new ArrayList<>();
+        // dieselben Definitionen, aus denen der SchemaManager die Tabellen anlegt
+        for (TableDefinition table : new DefaultTableGenerator(session.getProject()).generateDefaultTableCreator().getTableDefinitions()) {
+            Map<String, Column> columns = columnsOf(connection, table.getName());
+            if (columns.isEmpty()) {
+                missing.add("table " + table.getName());
+                continue;
+            }
+            for (FieldDefinition field : table.getFields()) {
+                Column actual = columns.get(field.getName().toUpperCase(Locale.ROOT));
+                Column expected = expectedColumn(session.getPlatform(), field);
+                if (actual == null)
+                    missing.add("column " + table.getName() + "." + field.getName());
+                else if (!actual.equals(expected))
+                    missing.add((actual.type().equals(expected.type()) ? "nullability " : "type ")
+                            + table.getName() + "." + field.getName() + ": " + actual + " instead of " + expected);
+            }
+        }
+        for (String table : sequenceTables(session)) {
+            if (!tableExists(connection, table))
+                missing.add("table " + table);
+        }
+        for (SchemaIndexes.Index index : SchemaIndexes.missing(connection)) {
+            missing.add("index " + index.name);
+        }
+        if (!AddressTrigrams.isInstalled(connection))
+            missing.add("trigger PROVIDER_TRIGRAMS");
+        return missing;
+    }
+
+    private static Set<String> sequenceTables(DatabaseSession session) {
+        Set<String> tables = new LinkedHashSet<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            Sequence sequence = descriptor.usesSequenceNumbers() ? descriptor.getSequence() : null;
+            if (sequence instanceof TableSequence)
+                tables.add(((TableSequence) sequence).getTableName());
+        }
+        return tables;
+    }
+
+    /**
+     * Die Suchspalten der Customer werden von der Entity gepflegt - wurden sie erst nachträglich angelegt,
+     * fehlen sie in den bestehenden Zeilen.
+     */
+    private static void backfillSearchColumns(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE CUSTOMER SET LASTNAME_SEARCH = LOWER(LASTNAME) " +
+                    "WHERE LASTNAME_SEARCH IS NULL AND LASTNAME IS NOT NULL");
+            statement.executeUpdate("UPDATE CUSTOMER SET FIRSTNAME_SEARCH = LOWER(FIRSTNAME) " +
+                    "WHERE FIRSTNAME_SEARCH IS NULL AND FIRSTNAME IS NOT NULL");
+        }
+    }
+
+    /**
+     * Der Typ, mit dem EclipseLink die Spalte anlegen würde - eine <code>columnDefinition</code> geht dem Typ des
+     * Attributs vor. Schlüsselspalten sind immer <code>NOT NULL</code>.
+     */
+    private static Column expectedColumn(DatabasePlatform platform, FieldDefinition field) {
+        String type;
+        if (field.getTypeDefinition() != null)
+            type = field.getTypeDefinition().trim().split("[\\s(]", 2)[0];
+        else if (field.getTypeName() != null)
+            type = field.getTypeName();
+        else
+            type = platform.getFieldTypeDefinition(field.getType()).getName();
+        return new Column(type.toUpperCase(Locale.ROOT), field.shouldAllowNull() && !field.isPrimaryKey());
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        return !columnsOf(connection, table).isEmpty();
+    }
+
+    private static Map<String, Column> columnsOf(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, Column> columns = new HashMap<>();
+        try (ResultSet rs = metaData.getColumns(null, connection.getSchema(), table.toUpperCase(Locale.ROOT), null)) {
+            while (rs.next()) {
+                columns.put(rs.getString("COLUMN_NAME").toUpperCase(Locale.ROOT), new Column(
+                        rs.getString("TYPE_NAME").toUpperCase(Locale.ROOT),
+                        rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls));
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,131 @@
+package at.campus02.dbp2.assignment;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Die Sekundär-Indizes, die von den Abfragen des {@link AppointmentRepository} benötigt werden.
+ * Die DDL-Generierung von EclipseLink erzeugt nur Primärschlüssel - fehlende Indizes werden daher beim Start
+ * angelegt und anschließend geprüft.
+ */
+final class SchemaIndexes {
+
+    static final class Index {
+        final String name;
+        final String table;
+        final List<String> columns;
+
+        Index(String name, String table, String... columns) {
+            this.name = name;
+            this.table = table;
+            this.columns = Collections.unmodifiableList(Arrays.asList(columns));
+        }
+
+        String createStatement() {
+            return "CREATE INDEX " + name + " ON " + table + " (" + String.join(", ", columns) + ")";
+        }
+    }
+
+    static final List<Index> INDEXES = Collections.unmodifiableList(Arrays.asList(
+            // mit ID, damit die seitenweise Suche ohne Sortierung auskommt
+            new Index("APPOINTMENT_TIME", "APPOINTMENT", "TIME", "ID"),
+            new Index("APPOINTMENT_CUSTOMER_TIME", "APPOINTMENT", "CUSTOMER_EMAIL", "TIME"),
+            new Index("APPOINTMENT_PROVIDER_TIME", "APPOINTMENT", "PROVIDER_ID", "TIME"),
+            new Index("CUSTOMER_NAME_SEARCH", "CUSTOMER", "LASTNAME_SEARCH", "FIRSTNAME_SEARCH"),
+            // deckt findProvidersBy vollständig ab - einen reinen TYPE-Index mit nur drei Werten ignoriert Derby
+            new Index("PROVIDER_TYPE", "PROVIDER", "TYPE", "ADDRESS", "ID"),
+            new Index("ADDRESS_TRIGRAM_TRIGRAM", "ADDRESS_TRIGRAM", "TRIGRAM", "PROVIDER_ID"),
+            new Index("ADDRESS_TRIGRAM_PROVIDER", "ADDRESS_TRIGRAM", "PROVIDER_ID")
+    ));
+
+    private SchemaIndexes() {
+    }
+
+    /**
+     * Legt alle fehlenden Indizes an und prüft danach, ob alle vorhanden sind.
+     * Ein Index gilt auch dann als vorhanden, wenn unter anderem Namen ein Index mit denselben Spalten existiert.
+     * Ein gleichnamiger Index mit anderen Spalten (z.B. nach dem Entfernen einer Spalte) wird ersetzt.
+     * @throws IllegalStateException falls ein Index nach dem Anlegen noch immer fehlt.
+     */
+    static void ensure(EntityManagerFactory factory) {
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            Connection connection = manager.unwrap(Connection.class);
+            List<Index> missing = missing(connection);
+            try (Statement statement = connection.createStatement()) {
+                for (Index index : missing) {
+                    if (existingNames(connection, index.table).contains(index.name))
+                        statement.executeUpdate("DROP INDEX " + index.name);
+                    statement.executeUpdate(index.createStatement());
+                }
+            }
+            manager.getTransaction().commit();
+
+            manager.getTransaction().begin();
+            missing = missing(manager.unwrap(Connection.class));
+            manager.getTransaction().commit();
+            if (!missing.isEmpty()) {
+                throw new IllegalStateException("Missing index " + missing.get(0).name);
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Cannot create indexes", e);
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+            manager.close();
+        }
+    }
+
+    static List<Index> missing(Connection connection) throws SQLException {
+        List<Index> missing = new ArrayList<>();
+        for (Index index : INDEXES) {
+            if (!existingColumnLists(connection, index.table).contains(index.columns)) {
+                missing.add(index);
+            }
+        }
+        return missing;
+    }
+
+    private static Set<String> existingNames(Connection connection, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(null, connection.getSchema(), table, false, false)) {
+            while (rs.next()) {
+                names.add(rs.getString("INDEX_NAME"));
+            }
+        }
+        return names;
+    }
+
+    private static List<List<String>> existingColumnLists(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Map<String, List<String>> columnsByIndex = new HashMap<>();
+        try (ResultSet rs = metaData.getIndexInfo(null, connection.getSchema(), table, false, false)) {
+            while (rs.next()) {
+                String indexName = rs.getString("INDEX_NAME");
+                int position = rs.getShort("ORDINAL_POSITION");
+                List<String> columns = columnsByIndex.computeIfAbsent(indexName, name -> new ArrayList<>());
+                while (columns.size() < position) {
+                    columns.add(null);
+                }
+                columns.set(position - 1, rs.getString("COLUMN_NAME"));
+            }
+        }
+        return new ArrayList<>(columnsByIndex.values());
+    }
+}
@@ -0,0 +1,31 @@
+package at.campus02.dbp2.assignment;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Die SQL-Anweisungen, die ein einzelner Aufruf einer Repository-Methode ausgelöst hat, siehe {@link SqlProfiler}.
+ * <code>rowsRead</code> zählt die Ergebnisse der lesenden Abfragen, die selbst eine Anweisung an die Datenbank
+ * geschickt haben (Treffer aus dem Cache zählen nicht). <code>executions</code> enthält je SQL-Text die Anzahl der
+ * Ausführungen, in der Reihenfolge der ersten Ausführung.
+ *
+ * @param repeatedStatements lesende Anweisungen, die innerhalb des Aufrufs mit mindestens
+ *                           {@link SqlProfiler#getRepeatThreshold()} verschiedenen Parametern ausgeführt wurden
+ *                           (N+1-Muster).
+ */
+public record SqlCallProfile(String operation, int statements, long rowsRead, double sqlMillis, double totalMillis,
+                             Map<String, Integer> executions, List<RepeatedStatement> repeatedStatements) {
+
+    /**
+     * @return <code>true</code> falls der Aufruf mindestens eine Anweisung wiederholt ausgeführt hat.
+     */
+    public boolean isNPlusOne() {
+        return !repeatedStatements.isEmpty();
+    }
+
+    /**
+     * Eine lesende Anweisung, die innerhalb eines Aufrufs wiederholt mit verschiedenen Parametern ausgeführt wurde.
+     */
+    public record RepeatedStatement(String sql, int executions, int distinctParameters) {
+    }
+}
@@ -0,0 +1,339 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.logging.SessionLog;
+import org.eclipse.persistence.queries.Cursor;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Record;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.server.Server;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * {@link SessionProfiler} für EclipseLink, der jede SQL-Anweisung dem Repository-Aufruf zuordnet, in dem sie
+ * ausgeführt wurde. Ein Aufruf wird mit {@link #profile(String, Supplier)} eingeklammert, alle Anweisungen, die
+ * derselbe Thread bis zu dessen Ende ausführt, zählen zu diesem Aufruf; verschachtelte Klammern zählen zum äußersten
+ * Aufruf, Anweisungen außerhalb einer Klammer werden ignoriert.
+ * <p>Für jeden Aufruf entsteht ein {@link SqlCallProfile} mit Anzahl der Anweisungen, gelesenen Zeilen und der Zeit
+ * in der Datenbank (Ausführen und Lesen der Ergebnisse). Wird innerhalb eines Aufrufs dieselbe lesende Anweisung mit
+ * mindestens {@link #getRepeatThreshold()} verschiedenen Parametern ausgeführt, gilt das als N+1-Muster und wird
+ * zusätzlich als Warnung in das Log der Session geschrieben.
+ * <p>Zeilen aus Cursorn (Streams, Publisher) werden erst nach dem Aufruf gelesen und deshalb nicht gezählt.
+ */
+public final class SqlProfiler implements SessionProfiler {
+
+    public static final int DEFAULT_REPEAT_THRESHOLD = 3;
+
+    /**
+     * Schlüssel in {@link SqlCallProfile#executions()} für gesammelte Schreibanweisungen
+     * (<code>eclipselink.jdbc.batch-writing</code>), deren SQL-Text EclipseLink dem Profiler nicht mitteilt.
+     */
+    public static final String BATCH = "(batch)";
+
+    private final ThreadLocal<Call> current = new ThreadLocal<>();
+    private final Map<String, Totals> totals = new ConcurrentHashMap<>();
+    private volatile int repeatThreshold = DEFAULT_REPEAT_THRESHOLD;
+    private volatile Consumer<SqlCallProfile> listener;
+    private volatile Session session;
+
+    /**
+     * Installiert einen SqlProfiler an der Session der <code>factory</code>, oder liefert den bereits installierten.
+     * @throws IllegalStateException falls an der Session bereits ein anderer Profiler installiert ist.
+     */
+    public static synchronized SqlProfiler install(EntityManagerFactory factory) {
+        Server server = JpaHelper.getServerSession(factory);
+        SessionProfiler installed = server.getProfiler();
+        if (installed instanceof SqlProfiler)
+            return (SqlProfiler) installed;
+        if (installed != null)
+            throw new IllegalStateException("Session already has a profiler: " + installed.getClass().getName());
+        SqlProfiler profiler = new SqlProfiler();
+        server.setProfiler(profiler);
+        return profiler;
+    }
+
+    /**
+     * Entfernt den Profiler wieder von der Session der <code>factory</code>, falls er dort installiert ist.
+     */
+    public static synchronized void uninstall(EntityManagerFactory factory) {
+        Server server = JpaHelper.getServerSession(factory);
+        if (server.getProfiler() instanceof SqlProfiler)
+            server.setProfiler(null);
+    }
+
+    /**
+     * Führt <code>call</code> aus und ordnet alle dabei ausgeführten SQL-Anweisungen <code>operation</code> zu.
+     */
+    public <T> T profile(String operation, Supplier<T> call) {
+        if (current.get() != null)
+            return call.get();
+
+        Call profiled = new Call(operation);
+        current.set(profiled);
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            current.remove();
+            finish(profiled.toProfile(System.nanoTime() - start, repeatThreshold));
+        }
+    }
+
+    private void finish(SqlCallProfile profile) {
+        totals.computeIfAbsent(profile.operation(), Totals::new).add(profile);
+        Session logTo = session;
+        if (profile.isNPlusOne() && logTo instanceof AbstractSession) {
+            for (SqlCallProfile.RepeatedStatement repeated : profile.repeatedStatements()) {
+                ((AbstractSession) logTo).log(SessionLog.WARNING, SessionLog.QUERY,
+                        "N+1 in " + profile.operation() + ": " + repeated.executions() + " executions with "
+                                + repeated.distinctParameters() + " distinct parameters of " + repeated.sql(),
+                        null, null, false);
+            }
+        }
+        Consumer<SqlCallProfile> notify = listener;
+        if (notify != null)
+            notify.accept(profile);
+    }
+
+    /**
+     * @param listener erhält nach jedem Aufruf dessen {@link SqlCallProfile}, im Thread des Aufrufs;
+     *                 <code>null</code> entfernt den Listener.
+     */
+    public void setListener(Consumer<SqlCallProfile> listener) {
+        this.listener = listener;
+    }
+
+    public int getRepeatThreshold() {
+        return repeatThreshold;
+    }
+
+    /**
+     * @param repeatThreshold ab wie vielen verschiedenen Parametern eine wiederholte Anweisung als N+1 gilt.
+     * @throws IllegalArgumentException falls <code>repeatThreshold</code> kleiner als 2 ist.
+     */
+    public void setRepeatThreshold(int repeatThreshold) {
+        if (repeatThreshold < 2)
+            throw new IllegalArgumentException("Repeat threshold must be at least 2");
+        this.repeatThreshold = repeatThreshold;
+    }
+
+    /**
+     * @return die Summen aller Methoden, sortiert nach Methode.
+     */
+    public List<SqlStatistics> snapshot() {
+        List<SqlStatistics> snapshot = new ArrayList<>();
+        for (Totals operation : totals.values()) {
+            snapshot.add(operation.snapshot());
+        }
+        snapshot.sort(Comparator.comparing(SqlStatistics::operation));
+        return snapshot;
+    }
+
+    /**
+     * @return die Summen der Methode <code>operation</code>, oder <code>null</code> falls sie noch nicht aufgerufen wurde.
+     */
+    public SqlStatistics snapshot(String operation) {
+        Totals found = totals.get(operation);
+        return found == null ? null : found.snapshot();
+    }
+
+    public void reset() {
+        totals.clear();
+    }
+
+    //-------------------------------SessionProfiler------------------------------------------------
+    @Override
+    public Object profileExecutionOfQuery(DatabaseQuery query, Record row, AbstractSession session) {
+        Call call = current.get();
+        if (call == null)
+            return session.internalExecuteQuery(query, (AbstractRecord) row);
+
+        Execution execution = new Execution();
+        call.executions.push(execution);
+        try {
+            Object result = session.internalExecuteQuery(query, (AbstractRecord) row);
+            if (execution.sentStatement && query.isReadQuery())
+                call.rowsRead += rowsOf(result);
+            return result;
+        } finally {
+            call.executions.pop();
+        }
+    }
+
+    private static long rowsOf(Object result) {
+        if (result == null || result instanceof Cursor)
+            return 0;
+        if (result instanceof Collection)
+            return ((Collection<?>) result).size();
+        if (result instanceof Map)
+            return ((Map<?, ?>) result).size();
+        return 1;
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        Call call = current.get();
+        if (call == null)
+            return;
+        if (SqlPrepare.equals(operationName)) {
+            call.statementStarted(query);
+        } else if (StatementExecute.equals(operationName) || RowFetch.equals(operationName)) {
+            if (call.depth++ == 0)
+                call.sqlStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        Call call = current.get();
+        if (call == null || call.depth == 0)
+            return;
+        if (StatementExecute.equals(operationName) || RowFetch.equals(operationName)) {
+            if (--call.depth == 0)
+                call.sqlNanos += System.nanoTime() - call.sqlStart;
+        }
+    }
+
+    @Override
+    public void startOperationProfile(String operationName) {
+    }
+
+    @Override
+    public void endOperationProfile(String operationName) {
+    }
+
+    @Override
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    @Override
+    public void update(String operationName, Object value) {
+    }
+
+    @Override
+    public void occurred(String operationName, AbstractSession session) {
+    }
+
+    @Override
+    public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+    }
+
+    @Override
+    public void setProfileWeight(int weight) {
+    }
+
+    @Override
+    public int getProfileWeight() {
+        return ALL;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    //-------------------------------Aufrufe--------------------------------------------------------
+    private static final class Execution {
+        private boolean sentStatement;
+    }
+
+    private static final class Call {
+        private final String operation;
+        private final Deque<Execution> executions = new ArrayDeque<>();
+        private final Map<String, Set<String>> parametersBySql = new LinkedHashMap<>();
+        private final Map<String, Integer> countBySql = new LinkedHashMap<>();
+        private int statements;
+        private long rowsRead;
+        private long sqlNanos;
+        private int depth;
+        private long sqlStart;
+
+        private Call(String operation) {
+            this.operation = operation;
+        }
+
+        private void statementStarted(DatabaseQuery query) {
+            statements++;
+            Execution execution = executions.peek();
+            if (execution != null)
+                execution.sentStatement = true;
+            if (query == null) {
+                countBySql.merge(BATCH, 1, Integer::sum);
+                return;
+            }
+
+            String sql = sqlOf(query);
+            countBySql.merge(sql, 1, Integer::sum);
+            if (query.isReadQuery())
+                parametersBySql.computeIfAbsent(sql, key -> new HashSet<>()).add(parametersOf(query));
+        }
+
+        private static String sqlOf(DatabaseQuery query) {
+            String sql = query.getSQLString();
+            return sql != null ? sql : query.getClass().getSimpleName() + " " + query.getReferenceClassName();
+        }
+
+        private static String parametersOf(DatabaseQuery query) {
+            if (query.getTranslationRow() != null)
+                return String.valueOf(query.getTranslationRow().getValues());
+            return String.valueOf(query.getArgumentValues());
+        }
+
+        private SqlCallProfile toProfile(long totalNanos, int repeatThreshold) {
+            List<SqlCallProfile.RepeatedStatement> repeated = new ArrayList<>();
+            for (Map.Entry<String, Set<String>> entry : parametersBySql.entrySet()) {
+                int distinct = entry.getValue().size();
+                if (distinct >= repeatThreshold)
+                    repeated.add(new SqlCallProfile.RepeatedStatement(entry.getKey(), countBySql.get(entry.getKey()), distinct));
+            }
+            return new SqlCallProfile(operation, statements, rowsRead, sqlNanos / 1e6, totalNanos / 1e6,
+                    Collections.unmodifiableMap(countBySql), Collections.unmodifiableList(repeated));
+        }
+    }
+
+    private static final class Totals {
+        private final String operation;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final LongAdder rowsRead = new LongAdder();
+        private final LongAdder sqlNanos = new LongAdder();
+        private final LongAdder nPlusOneCalls = new LongAdder();
+
+        private Totals(String operation) {
+            this.operation = operation;
+        }
+
+        private void add(SqlCallProfile profile) {
+            calls.increment();
+            statements.add(profile.statements());
+            rowsRead.add(profile.rowsRead());
+            sqlNanos.add((long) (profile.sqlMillis() * 1e6));
+            if (profile.isNPlusOne())
+                nPlusOneCalls.increment();
+        }
+
+        private SqlStatistics snapshot() {
+            return new SqlStatistics(operation, calls.sum(), statements.sum(), rowsRead.sum(), sqlNanos.sum() / 1e6,
+                    nPlusOneCalls.sum());
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package at.campus02.dbp2.assignment;
+
+/**
+ * Summe der {@link SqlCallProfile}s aller Aufrufe einer Repository-Methode, siehe {@link SqlProfiler}.
+ * <code>nPlusOneCalls</code> zählt die Aufrufe, in denen ein N+1-Muster erkannt wurde.
+ */
+public record SqlStatistics(String operation, long calls, long statements, long rowsRead, double sqlMillis,
+                            long nPlusOneCalls) {
+
+    public double statementsPerCall() {
+        return calls == 0 ? 0 : (double) statements / calls;
+    }
+}
@@ -0,0 +1,232 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AsyncSpecification extends BaseSpecification {
+
+    private AsyncAppointmentRepository asyncRepository;
+
+    @BeforeEach
+    public void openAsync() {
+        asyncRepository = AsyncAppointmentRepositoryFactory.open(entityManagerFactory);
+    }
+
+    @AfterEach
+    public void closeAsync() {
+        asyncRepository.close();
+    }
+
+    private List<Appointment> setupAppointments(int count) {
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        for (int i = 0; i < count; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusMinutes(15L * i)));
+        }
+        repository.create(provider);
+        return provider.getAppointments();
+    }
+
+    private List<Customer> setupCustomers(int count) {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Customer customer = prepareCustomer(lastname, firstname, "mail" + i + "@campus02.at");
+            repository.create(customer);
+            customers.add(customer);
+        }
+        return customers;
+    }
+
+    @Test
+    public void as01_futuresCompleteWithResultsOfBlockingRepository() throws Exception {
+        // given
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0));
+        provider.getAppointments().add(appointment);
+
+        // when
+        boolean customerCreated = asyncRepository.create(customer).get(10, TimeUnit.SECONDS);
+        boolean providerCreated = asyncRepository.create(provider).get(10, TimeUnit.SECONDS);
+        boolean reserved = asyncRepository.reserve(appointment, customer)
+                .thenCompose(ok -> asyncRepository.getAppointmentsFor(customer))
+                .thenApply(appointments -> appointments.contains(appointment))
+                .get(10, TimeUnit.SECONDS);
+        Customer read = asyncRepository.read(email).get(10, TimeUnit.SECONDS);
+        List<Provider> found = asyncRepository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "graz").get(10, TimeUnit.SECONDS);
+        boolean cancelled = asyncRepository.cancel(appointment, customer).get(10, TimeUnit.SECONDS);
+        List<AppointmentSlot> free = asyncRepository.findFreeSlotsByProvider(provider.getId(), null, null).get(10, TimeUnit.SECONDS);
+
+        // then
+        assertThat(customerCreated, is(true));
+        assertThat(providerCreated, is(true));
+        assertThat(reserved, is(true));
+        assertThat(read, is(customer));
+        assertThat(found, contains(provider));
+        assertThat(cancelled, is(true));
+        assertThat(free, hasSize(1));
+        assertThat(asyncRepository.blocking(), is(sameInstance(repository)));
+    }
+
+    @Test
+    public void as02_exceptionsCompleteFutureExceptionally() {
+        // given
+        Customer unknown = prepareCustomer(lastname, firstname, email);
+
+        // when
+        CompletableFuture<Customer> update = asyncRepository.update(unknown);
+        CompletableFuture<List<Customer>> search = asyncRepository.findCustomersBy(null, firstname);
+
+        // then
+        ExecutionException updateFailure = assertThrows(ExecutionException.class, () -> update.get(10, TimeUnit.SECONDS));
+        assertThat(updateFailure.getCause(), is(instanceOf(IllegalArgumentException.class)));
+        ExecutionException searchFailure = assertThrows(ExecutionException.class, () -> search.get(10, TimeUnit.SECONDS));
+        assertThat(searchFailure.getCause(), is(instanceOf(IllegalArgumentException.class)));
+    }
+
+    @Test
+    public void as03_manyRequestsNeverUseMoreConnectionsThanAllowed() throws Exception {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AppointmentRepository counting = (AppointmentRepository) Proxy.newProxyInstance(
+                AppointmentRepository.class.getClassLoader(),
+                new Class<?>[]{AppointmentRepository.class},
+                (proxy, method, args) -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    threads.add(Thread.currentThread().getName());
+                    try {
+                        return method.invoke(repository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                });
+        int maxConnections = 4;
+
+        // when
+        List<CompletableFuture<Customer>> futures = new ArrayList<>();
+        try (AsyncAppointmentRepository limited = new AsyncAppointmentRepositoryFactory(counting, maxConnections)) {
+            for (int i = 0; i < 20_000; i++) {
+                futures.add(limited.read(email));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        }
+
+        // then
+        for (CompletableFuture<Customer> future : futures) {
+            assertThat(future.get(), is(customer));
+        }
+        assertThat(maxActive.get(), is(lessThanOrEqualTo(maxConnections)));
+        if (Runtime.version().feature() < 21) {
+            // ohne virtuelle Threads: nie mehr Plattform-Threads als Verbindungen
+            assertThat(threads.size(), is(lessThanOrEqualTo(maxConnections)));
+        }
+    }
+
+    @Test
+    public void as04_concurrentReservationsOfSameAppointmentHaveExactlyOneWinner() throws Exception {
+        // given
+        Appointment appointment = setupAppointments(1).get(0);
+        List<Customer> customers = setupCustomers(64);
+
+        // when
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Customer customer : customers) {
+            futures.add(asyncRepository.reserve(appointment, customer));
+        }
+        List<Boolean> results = new ArrayList<>();
+        for (CompletableFuture<Boolean> future : futures) {
+            results.add(future.get(60, TimeUnit.SECONDS));
+        }
+
+        // then
+        assertThat(results.stream().filter(success -> success).count(), is(1L));
+        Customer winner = customers.get(results.indexOf(true));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, appointment.getId()).getCustomer(), is(winner));
+    }
+
+    @Test
+    public void as05_fannedOutReservationsAllSucceed() throws Exception {
+        // given
+        int requests = 1000;
+        List<Appointment> appointments = setupAppointments(requests);
+        List<Customer> customers = setupCustomers(requests);
+
+        // when: alle Reservierungen abschicken und erst danach auf die Ergebnisse warten
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            futures.add(asyncRepository.reserve(appointments.get(i), customers.get(i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+
+        // then
+        for (CompletableFuture<Boolean> future : futures) {
+            assertThat(future.get(), is(true));
+        }
+        for (int i = 0; i < requests; i += 100) {
+            assertThat(repository.getAppointmentsFor(customers.get(i)), contains(appointments.get(i)));
+        }
+        assertThat(repository.findFreeSlotsByProvider(appointments.get(0).getProvider().getId(), null, null), is(empty()));
+    }
+
+    @Test
+    public void as06_freeSlotsDoNotWaitForAConnection() throws Exception {
+        // given
+        Provider provider = setupAppointments(3).get(0).getProvider();
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        customer.setFirstname("Neu");
+
+        try (AsyncAppointmentRepository limited = new AsyncAppointmentRepositoryFactory(repository, 1)) {
+            // die einzige Verbindung wartet auf eine Zeile, die eine offene Transaktion gesperrt hat
+            CompletableFuture<Customer> update;
+            CompletableFuture<List<AppointmentSlot>> byProvider;
+            CompletableFuture<List<AppointmentSlot>> byType;
+            CompletableFuture<List<AppointmentSlot>> unknown;
+            entityManager.getTransaction().begin();
+            try {
+                entityManager.createNativeQuery("UPDATE CUSTOMER SET LASTNAME = 'Gesperrt' WHERE EMAIL = ?")
+                        .setParameter(1, email)
+                        .executeUpdate();
+                update = limited.update(customer);
+
+                // when
+                byProvider = limited.findFreeSlotsByProvider(provider.getId(), null, null);
+                byType = limited.findFreeSlotsByType(ProviderType.ALLGMEINMEDIZIN, null, null);
+                unknown = limited.findFreeSlotsByType(null, null, null);
+
+                // then
+                assertThat(byProvider.isDone(), is(true));
+                assertThat(byType.isDone(), is(true));
+                assertThat(unknown.isDone(), is(true));
+                assertThat(update.isDone(), is(false));
+            } finally {
+                entityManager.getTransaction().rollback();
+            }
+            assertThat(byProvider.get(), hasSize(3));
+            assertThat(byType.get(), hasSize(3));
+            assertThat(unknown.get(), is(empty()));
+            assertThat(update.get(10, TimeUnit.SECONDS).getFirstname(), is("Neu"));
+        }
+    }
+}
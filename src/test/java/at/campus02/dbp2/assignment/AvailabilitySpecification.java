@@ -0,0 +1,241 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.PersistenceException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AvailabilitySpecification extends BaseSpecification {
+
+    private static final LocalDateTime START = LocalDateTime.of(2021, 11, 1, 8, 0);
+
+    private Provider prepareProviderWithSlots(ProviderType type, String address, int slots) {
+        Provider provider = prepareProvider(type, address);
+        for (int i = 0; i < slots; i++) {
+            provider.getAppointments().add(prepareAppointment(START.plusMinutes(15L * i)));
+        }
+        return provider;
+    }
+
+    private void assertIndexMatchesDatabase() {
+        Map<Integer, Set<Integer>> expected = new HashMap<>();
+        entityManager.clear();
+        for (Object[] row : entityManager.createQuery(
+                "select a.provider.id, a.id from Appointment a where a.customer is null", Object[].class).getResultList()) {
+            expected.computeIfAbsent((Integer) row[0], id -> new HashSet<>()).add((Integer) row[1]);
+        }
+        AvailabilityIndex availability = ((AppointmentRepositoryFactory) repository).availability();
+        assertThat(availability.freeIdsByProvider(), is(expected));
+    }
+
+    private static List<Integer> idsOf(List<AppointmentSlot> slots) {
+        return slots.stream().map(AppointmentSlot::appointmentId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void av01_createdProvidersAreIndexed() {
+        // given
+        Provider single = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 10);
+        List<Provider> bulk = Arrays.asList(
+                prepareProviderWithSlots(ProviderType.KINDERMEDIZIN, graz_doc2, 5),
+                prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_test, 5));
+
+        // when
+        repository.create(single);
+        repository.createAll(bulk);
+
+        // then
+        List<AppointmentSlot> slots = repository.findFreeSlotsByProvider(single.getId(), START.plusHours(1), START.plusHours(2));
+        assertThat(slots, hasSize(5));
+        assertThat(slots.get(0), is(new AppointmentSlot(slots.get(0).appointmentId(), START.plusHours(1),
+                single.getId(), ProviderType.ALLGMEINMEDIZIN, graz_doc1)));
+        assertThat(repository.findFreeSlotsByType(ProviderType.ALLGMEINMEDIZIN, null, null), hasSize(15));
+        assertThat(repository.findFreeSlotsByType(ProviderType.PHYSIOTHERAPIE, null, null), is(empty()));
+        assertThat(repository.findFreeSlotsByProvider(null, null, null), is(empty()));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av02_slotsAreSortedByTime() {
+        // given
+        Provider first = prepareProviderWithSlots(ProviderType.PHYSIOTHERAPIE, graz_doc1, 20);
+        Provider second = prepareProviderWithSlots(ProviderType.PHYSIOTHERAPIE, graz_doc2, 20);
+        repository.createAll(Arrays.asList(first, second));
+
+        // when
+        List<AppointmentSlot> slots = repository.findFreeSlotsByType(ProviderType.PHYSIOTHERAPIE, null, null);
+
+        // then
+        assertThat(slots, hasSize(40));
+        for (int i = 1; i < slots.size(); i++) {
+            assertThat(slots.get(i - 1).time().isAfter(slots.get(i).time()), is(false));
+        }
+    }
+
+    @Test
+    public void av03_reserveAndCancelKeepIndexConsistent() {
+        // given
+        Provider provider = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 4);
+        repository.create(provider);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        Appointment appointment = provider.getAppointments().get(2);
+
+        // when
+        repository.reserve(appointment, customer);
+
+        // then
+        assertThat(idsOf(repository.findFreeSlotsByProvider(provider.getId(), null, null)), not(hasItem(appointment.getId())));
+        assertIndexMatchesDatabase();
+
+        // when
+        repository.cancel(appointment, customer);
+
+        // then
+        assertThat(idsOf(repository.findFreeSlotsByProvider(provider.getId(), null, null)), hasItem(appointment.getId()));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av04_updateProviderKeepsIndexConsistent() {
+        // given
+        Provider provider = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 6);
+        repository.create(provider);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        repository.reserve(provider.getAppointments().get(0), customer);
+
+        // when
+        provider.setType(ProviderType.KINDERMEDIZIN);
+        provider.getAppointments().remove(5);
+        provider.getAppointments().get(1).setTime(START.plusDays(1));
+        provider.getAppointments().add(prepareAppointment(START.plusDays(2)));
+        repository.update(provider);
+
+        // then
+        assertThat(repository.findFreeSlotsByType(ProviderType.ALLGMEINMEDIZIN, null, null), is(empty()));
+        List<AppointmentSlot> slots = repository.findFreeSlotsByType(ProviderType.KINDERMEDIZIN, null, null);
+        assertThat(slots, hasSize(5));
+        assertThat(slots.get(4).time(), is(START.plusDays(2)));
+        assertThat(slots.get(3).time(), is(START.plusDays(1)));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av05_deletesKeepIndexConsistent() {
+        // given
+        Provider kept = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 4);
+        Provider deleted = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc2, 4);
+        repository.createAll(Arrays.asList(kept, deleted));
+        Customer first = prepareCustomer(lastname, firstname, email);
+        Customer second = prepareCustomer(lastname, firstname, "other." + email);
+        repository.create(first);
+        repository.create(second);
+        repository.reserve(kept.getAppointments().get(0), first);
+        repository.reserve(kept.getAppointments().get(1), second);
+
+        // when
+        repository.delete(deleted);
+        repository.delete(first);
+        repository.deleteCustomers(Arrays.asList(second.getEmail()));
+
+        // then
+        assertThat(repository.findFreeSlotsByProvider(deleted.getId(), null, null), is(empty()));
+        assertThat(repository.findFreeSlotsByProvider(kept.getId(), null, null), hasSize(4));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av06_concurrentReservationsKeepIndexConsistent() throws Exception {
+        // given
+        Provider provider = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 20);
+        repository.create(provider);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Customer customer = prepareCustomer(lastname, firstname, "mail" + i + "@campus02.at");
+            repository.create(customer);
+            customers.add(customer);
+        }
+
+        // when
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Customer customer : customers) {
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 10; round++) {
+                        for (Appointment appointment : provider.getAppointments()) {
+                            if (repository.reserve(appointment, customer)) {
+                                if (round % 2 == 0)
+                                    repository.cancel(appointment, customer);
+                                break;
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av07_failedTransactionsLeaveTheIndexUnchanged() {
+        // given
+        Provider valid = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, graz_doc1, 3);
+        Provider invalid = prepareProviderWithSlots(ProviderType.ALLGMEINMEDIZIN, "x".repeat(300), 3);
+
+        // when
+        assertThrows(PersistenceException.class, () -> repository.createAll(Arrays.asList(valid, invalid)));
+
+        // then
+        assertThat(repository.findFreeSlotsByType(ProviderType.ALLGMEINMEDIZIN, null, null), is(empty()));
+        assertIndexMatchesDatabase();
+    }
+
+    @Test
+    public void av08_changesAppliedOutOfOrderKeepTheDatabaseOrder() {
+        // given
+        AvailabilityIndex availability = new AvailabilityIndex(null, null);
+        AppointmentSlot slot = new AppointmentSlot(1, START, 7, ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        availability.add(slot);
+        AvailabilityIndex.Changes reserve = availability.changes();
+        AvailabilityIndex.Changes cancel = availability.changes();
+
+        // when: in der Datenbank erst reserve, dann cancel - angewendet in umgekehrter Reihenfolge
+        reserve.remove(1);
+        reserve.seal();
+        cancel.add(slot);
+        cancel.seal();
+        cancel.apply();
+        cancel.close();
+        reserve.apply();
+        reserve.close();
+
+        // then
+        assertThat(availability.findFree(7, START, START), contains(slot));
+        assertThat(availability.freeIdsByProvider(), is(Map.of(7, Set.of(1))));
+    }
+}
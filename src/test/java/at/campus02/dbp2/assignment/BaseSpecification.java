@@ -32,6 +32,7 @@ public class BaseSpecification {
     @BeforeEach
     public void before() {
         entityManagerFactory = Persistence.createEntityManagerFactory("assignment");
+        clearDatabase(entityManagerFactory);
         entityManager = entityManagerFactory.createEntityManager();
         repository = AppointmentRepositoryFactory.get(entityManagerFactory);
     }
@@ -49,6 +50,30 @@ public class BaseSpecification {
         }
     }
 
+    /**
+     * Die Datenbank bleibt über Starts hinweg erhalten - jeder Test beginnt trotzdem ohne Daten und mit
+     * zurückgesetzten ID-Generatoren. Muss vor {@link AppointmentRepositoryFactory#get} laufen, damit der Index
+     * der freien Termine leer startet.
+     */
+    static void clearDatabase(EntityManagerFactory factory) {
+        SchemaBootstrap.ensure(factory);
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            manager.createNativeQuery("DELETE FROM APPOINTMENT").executeUpdate();
+            manager.createNativeQuery("DELETE FROM PROVIDER").executeUpdate();
+            manager.createNativeQuery("DELETE FROM CUSTOMER").executeUpdate();
+            manager.createNativeQuery("DELETE FROM ADDRESS_TRIGRAM").executeUpdate();
+            manager.createNativeQuery("UPDATE SEQUENCE SET SEQ_COUNT = 0").executeUpdate();
+            manager.getTransaction().commit();
+        } finally {
+            if (manager.getTransaction().isActive()) {
+                manager.getTransaction().rollback();
+            }
+            manager.close();
+        }
+    }
+
     static Customer prepareCustomer(String lastname, String firstname, String email) {
         Customer customer = new Customer(email);
         customer.setLastname(lastname);
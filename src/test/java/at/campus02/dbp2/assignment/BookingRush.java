@@ -0,0 +1,218 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simuliert den Ansturm, wenn um 8:00 neue Termine freigeschaltet werden: <code>customers</code> Customer versuchen
+ * gleichzeitig, einen der <code>appointments</code> begehrten Termine zu reservieren. Beliebte Termine (die ersten
+ * des Pools) werden entsprechend <code>skew</code> häufiger gewählt. Wer verliert, versucht es bis zu
+ * <code>attempts</code> Mal mit einem anderen Termin.
+ * <p>Danach wird jede gemeldete Reservierung gegen die Datenbank geprüft: ein Termin, der mehr als einem Customer
+ * zugesagt wurde, ist doppelt gebucht, eine zugesagte Reservierung, die nicht in der Datenbank steht, ist verloren.
+ * Bei doppelten oder verlorenen Buchungen endet das Programm mit Exit-Code 1.
+ * <p>Aufruf: <code>gradle bookingRush -Dcustomers=20000 -Dappointments=2000 -Dproviders=50 -Dthreads=64 -Dattempts=3
+ * -Dskew=3 -Dseed=42</code> - derselbe <code>seed</code> erzeugt dieselben Wünsche der Customer.
+ * Mit <code>-Dat.campus02.dbp2.database.profile=network</code> läuft der Ansturm gegen einen Derby Network Server,
+ * siehe {@link DatabaseProfile}.
+ */
+public class BookingRush {
+
+    public static void main(String[] args) throws Exception {
+        int customers = Integer.getInteger("customers", 20_000);
+        int appointments = Integer.getInteger("appointments", 2_000);
+        int providers = Integer.getInteger("providers", 50);
+        int threads = Integer.getInteger("threads", 64);
+        int attempts = Integer.getInteger("attempts", 3);
+        double skew = Double.parseDouble(System.getProperty("skew", "3"));
+        long seed = Long.getLong("seed", 42L);
+
+        // der Ansturm beginnt immer mit einer leeren Datenbank
+        Map<String, Object> recreate = new HashMap<>();
+        recreate.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+        EntityManagerFactory factory = DatabaseProfile.createEntityManagerFactory(recreate);
+        try {
+            AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+            List<Appointment> pool = createPool(repository, appointments, providers);
+            List<Customer> people = createCustomers(factory, customers);
+
+            Map<Integer, List<String>> promised = new ConcurrentHashMap<>();
+            ConcurrentLinkedQueue<long[]> latencyChunks = new ConcurrentLinkedQueue<>();
+            AtomicLong calls = new AtomicLong();
+            AtomicLong conflicts = new AtomicLong();
+            AtomicInteger errors = new AtomicInteger();
+            CountDownLatch gate = new CountDownLatch(1);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int c = 0; c < customers; c++) {
+                Customer customer = people.get(c);
+                Random wishes = new Random(seed * 31 + c);
+                executor.execute(() -> {
+                    long[] latencies = new long[attempts];
+                    int used = 0;
+                    try {
+                        gate.await();
+                        for (int attempt = 0; attempt < attempts; attempt++) {
+                            // Index-Verteilung mit Schwerpunkt am Anfang des Pools
+                            int wish = (int) (pool.size() * Math.pow(wishes.nextDouble(), skew));
+                            Appointment appointment = pool.get(wish);
+                            long start = System.nanoTime();
+                            boolean reserved = repository.reserve(appointment, customer);
+                            latencies[used++] = System.nanoTime() - start;
+                            calls.incrementAndGet();
+                            if (reserved) {
+                                promised.computeIfAbsent(appointment.getId(), id -> new CopyOnWriteArrayList<>())
+                                        .add(customer.getEmail());
+                                break;
+                            }
+                            conflicts.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        errors.incrementAndGet();
+                    } finally {
+                        latencyChunks.add(Arrays.copyOf(latencies, used));
+                    }
+                });
+            }
+
+            long begin = System.nanoTime();
+            gate.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+
+            long[] latencies = latencyChunks.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            Audit audit = audit(factory, promised);
+
+            System.out.printf("%d customers, %d appointments at %d providers, %d threads, %d attempts, skew %.1f, seed %d%n",
+                    customers, appointments, providers, threads, attempts, skew, seed);
+            System.out.printf("throughput: %d reserve calls in %.2f s = %.0f calls/s%n", calls.get(), seconds, calls.get() / seconds);
+            System.out.printf("latency:    p50 %.2f ms, p99 %.2f ms, p999 %.2f ms, max %.2f ms%n",
+                    percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+                    percentile(latencies, 1.0));
+            System.out.printf("conflicts:  %d of %d calls (%.1f %%), %d errors%n",
+                    conflicts.get(), calls.get(), calls.get() == 0 ? 0.0 : 100.0 * conflicts.get() / calls.get(), errors.get());
+            System.out.printf("booked:     %d promised, %d in database, %d double-booked, %d lost, %d unpromised%n",
+                    audit.promised, audit.booked, audit.doubleBooked, audit.lost, audit.unpromised);
+
+            if (audit.doubleBooked > 0 || audit.lost > 0)
+                System.exit(1);
+        } finally {
+            if (factory.isOpen())
+                factory.close();
+        }
+    }
+
+    private static List<Appointment> createPool(AppointmentRepository repository, int appointments, int providers) {
+        List<Provider> created = new ArrayList<>();
+        LocalDateTime opening = LocalDateTime.of(2022, 3, 1, 8, 0);
+        for (int p = 0; p < providers; p++) {
+            created.add(BaseSpecification.prepareProvider(
+                    ProviderType.values()[p % ProviderType.values().length], "Gasse " + p + ", 8010 Graz"));
+        }
+        for (int a = 0; a < appointments; a++) {
+            created.get(a % providers).getAppointments()
+                    .add(BaseSpecification.prepareAppointment(opening.plusMinutes(15L * (a / providers))));
+        }
+        repository.createAll(created);
+
+        // Termine aller Provider abwechselnd, damit die beliebten nicht alle beim selben Provider liegen
+        List<Appointment> pool = new ArrayList<>();
+        for (int a = 0; a < appointments; a++) {
+            pool.add(created.get(a % providers).getAppointments().get(a / providers));
+        }
+        return pool;
+    }
+
+    private static List<Customer> createCustomers(EntityManagerFactory factory, int customers) {
+        List<Customer> created = new ArrayList<>();
+        EntityManager manager = factory.createEntityManager();
+        try {
+            manager.getTransaction().begin();
+            for (int c = 0; c < customers; c++) {
+                Customer customer = BaseSpecification.prepareCustomer("Nachname" + c, "Vorname" + c, "kunde" + c + "@campus02.at");
+                manager.persist(customer);
+                created.add(customer);
+                if ((c + 1) % AppointmentRepositoryFactory.DEFAULT_BATCH_SIZE == 0) {
+                    manager.flush();
+                    manager.clear();
+                }
+            }
+            manager.getTransaction().commit();
+        } finally {
+            if (manager.getTransaction().isActive())
+                manager.getTransaction().rollback();
+            manager.close();
+        }
+        return created;
+    }
+
+    private static final class Audit {
+        int promised;
+        int booked;
+        int doubleBooked;
+        int lost;
+        int unpromised;
+    }
+
+    private static Audit audit(EntityManagerFactory factory, Map<Integer, List<String>> promised) {
+        Map<Integer, String> booked = new HashMap<>();
+        EntityManager manager = factory.createEntityManager();
+        try {
+            List<Object[]> rows = manager.createQuery(
+                    "select a.id, a.customer.email from Appointment a where a.customer is not null", Object[].class)
+                    .getResultList();
+            for (Object[] row : rows) {
+                booked.put((Integer) row[0], (String) row[1]);
+            }
+        } finally {
+            manager.close();
+        }
+
+        Audit audit = new Audit();
+        audit.booked = booked.size();
+        for (Map.Entry<Integer, List<String>> entry : promised.entrySet()) {
+            List<String> winners = entry.getValue();
+            audit.promised += winners.size();
+            if (winners.size() > 1)
+                audit.doubleBooked++;
+            for (String winner : winners) {
+                if (!Objects.equals(booked.get(entry.getKey()), winner))
+                    audit.lost++;
+            }
+        }
+        for (Integer id : booked.keySet()) {
+            if (!promised.containsKey(id))
+                audit.unpromised++;
+        }
+        return audit;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
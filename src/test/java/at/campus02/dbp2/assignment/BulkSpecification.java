@@ -0,0 +1,188 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkSpecification extends BaseSpecification {
+
+    private List<Provider> prepareProviders(int providers, int appointmentsPerProvider) {
+        List<Provider> result = new ArrayList<>();
+        for (int p = 0; p < providers; p++) {
+            Provider provider = prepareProvider(ProviderType.values()[p % ProviderType.values().length], "Gasse " + p + ", Graz");
+            for (int a = 0; a < appointmentsPerProvider; a++) {
+                provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusMinutes(30L * a)));
+            }
+            result.add(provider);
+        }
+        return result;
+    }
+
+    @Test
+    public void b01_createAllWithNullReturnsZero() {
+        // when
+        int created = repository.createAll(null);
+
+        // then
+        assertThat(created, is(0));
+    }
+
+    @Test
+    public void b02_createAllWithInvalidBatchSizeThrowsIllegalArgumentException() {
+        // when / then
+        assertThrows(IllegalArgumentException.class, () -> repository.createAll(prepareProviders(1, 1), 0));
+    }
+
+    @Test
+    public void b03_createAllPersistsProvidersAndAppointments() {
+        // given
+        List<Provider> providers = prepareProviders(20, 15);
+
+        // when
+        int created = repository.createAll(providers, 7);
+
+        // then
+        assertThat(created, is(20));
+        for (Provider provider : providers) {
+            assertThat(provider.getId(), is(notNullValue()));
+            Provider fromDb = entityManager.find(Provider.class, provider.getId());
+            entityManager.refresh(fromDb);
+            assertThat(fromDb, is(provider));
+            assertThat(fromDb.getAppointments(), containsInAnyOrder(provider.getAppointments().toArray()));
+        }
+        assertThat(entityManager.createQuery("select count(a) from Appointment a", Long.class).getSingleResult(), is(300L));
+    }
+
+    @Test
+    public void b04_createAllSkipsNullAndExistingProviders() {
+        // given
+        Provider existing = createProvider(prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1));
+        Provider provider = prepareProvider(ProviderType.PHYSIOTHERAPIE, graz_doc2);
+
+        // when
+        int created = repository.createAll(Arrays.asList(existing, null, provider));
+
+        // then
+        assertThat(created, is(1));
+        assertThat(provider.getId(), is(notNullValue()));
+        assertThat(entityManager.createQuery("select count(p) from Provider p", Long.class).getSingleResult(), is(2L));
+    }
+
+    @Test
+    public void b05_deleteCustomersWithNullReturnsZero() {
+        // when
+        int deleted = repository.deleteCustomers(null);
+
+        // then
+        assertThat(deleted, is(0));
+    }
+
+    @Test
+    public void b06_deleteCustomersRemovesCustomersAndReleasesTheirAppointments() {
+        // given
+        Customer customer1 = createCustomer(prepareCustomer(lastname, firstname, "one." + email));
+        Customer customer2 = createCustomer(prepareCustomer(lastname, firstname, "two." + email));
+        Customer customer3 = createCustomer(prepareCustomer(lastname, firstname, "three." + email));
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        Appointment appointment1 = prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0));
+        Appointment appointment2 = prepareAppointment(LocalDateTime.of(2021, 11, 20, 11, 0));
+        Appointment appointment3 = prepareAppointment(LocalDateTime.of(2021, 11, 20, 12, 0));
+        appointment1.setCustomer(customer1);
+        appointment2.setCustomer(customer2);
+        appointment3.setCustomer(customer3);
+        provider.getAppointments().addAll(Arrays.asList(appointment1, appointment2, appointment3));
+        createProvider(provider);
+
+        // when
+        int deleted = repository.deleteCustomers(Arrays.asList(customer1.getEmail(), null, customer2.getEmail(), "unknown"));
+
+        // then
+        assertThat(deleted, is(2));
+        entityManager.clear();
+        assertThat(entityManager.find(Customer.class, customer1.getEmail()), is(nullValue()));
+        assertThat(entityManager.find(Customer.class, customer2.getEmail()), is(nullValue()));
+        assertThat(entityManager.find(Customer.class, customer3.getEmail()), is(customer3));
+        assertThat(entityManager.find(Appointment.class, appointment1.getId()).getCustomer(), is(nullValue()));
+        assertThat(entityManager.find(Appointment.class, appointment2.getId()).getCustomer(), is(nullValue()));
+        assertThat(entityManager.find(Appointment.class, appointment3.getId()).getCustomer(), is(customer3));
+    }
+
+    @Test
+    public void b07_deleteCustomersHandlesMoreEmailsThanOneStatementTakes() {
+        // given
+        List<String> emails = new ArrayList<>();
+        entityManager.getTransaction().begin();
+        for (int i = 0; i < 2500; i++) {
+            Customer customer = prepareCustomer(lastname, firstname, "mail" + i + "@campus02.at");
+            entityManager.persist(customer);
+            emails.add(customer.getEmail());
+        }
+        entityManager.getTransaction().commit();
+
+        // when
+        int deleted = repository.deleteCustomers(emails);
+
+        // then
+        assertThat(deleted, is(2500));
+        assertThat(entityManager.createQuery("select count(c) from Customer c", Long.class).getSingleResult(), is(0L));
+    }
+
+    @Test
+    public void b08_updateProviderAppliesOnlyTheDifferenceForLargeProviders() {
+        // given
+        Provider provider = prepareProviders(1, 5000).get(0);
+        repository.createAll(Arrays.asList(provider));
+        List<Appointment> appointments = provider.getAppointments();
+        Appointment changed = appointments.get(1);
+        int changedVersion = changed.getVersion();
+        Appointment untouched = appointments.get(2);
+        int untouchedVersion = untouched.getVersion();
+        Appointment dropped = appointments.get(3);
+        Appointment added = prepareAppointment(LocalDateTime.of(2022, 1, 1, 8, 0));
+
+        // when
+        changed.setTime(changed.getTime().plusDays(1));
+        appointments.remove(dropped);
+        appointments.add(added);
+        appointments.add(untouched);
+        Provider updated = repository.update(provider);
+
+        // then
+        assertThat(updated.getAppointments().size(), is(5000));
+        assertThat(added.getId(), is(notNullValue()));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, dropped.getId()), is(nullValue()));
+        assertThat(entityManager.find(Appointment.class, added.getId()).getTime(), is(added.getTime()));
+        Appointment changedFromDb = entityManager.find(Appointment.class, changed.getId());
+        assertThat(changedFromDb.getTime(), is(changed.getTime()));
+        assertThat(changedFromDb.getVersion(), is(changedVersion + 1));
+        assertThat(entityManager.find(Appointment.class, untouched.getId()).getVersion(), is(untouchedVersion));
+        assertThat(entityManager.createQuery("select count(a) from Appointment a", Long.class).getSingleResult(), is(5000L));
+    }
+
+    @Test
+    public void b09_updateProviderRejectsAppointmentsOfOtherProviders() {
+        // given
+        List<Provider> providers = prepareProviders(2, 2);
+        repository.createAll(providers);
+        Provider provider = providers.get(0);
+        Appointment foreign = providers.get(1).getAppointments().get(0);
+
+        // when
+        provider.getAppointments().add(foreign);
+
+        // then
+        assertThrows(IllegalArgumentException.class, () -> repository.update(provider));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, foreign.getId()).getProvider().getId(),
+                is(providers.get(1).getId()));
+        assertThat(entityManager.find(Provider.class, provider.getId()).getAppointments(), hasSize(2));
+    }
+}
@@ -0,0 +1,72 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Misst die Dauer der Schlüsselzugriffe {@link AppointmentRepository#read(String)} und
+ * {@link AppointmentRepository#read(Integer)} mit und ohne Shared Cache.
+ * <p>Aufruf: <code>gradle cacheBenchmark -Dcustomers=10000 -Dlookups=200000</code>
+ */
+public class CacheBenchmark {
+
+    public static void main(String[] args) {
+        int customers = Integer.getInteger("customers", 10_000);
+        int lookups = Integer.getInteger("lookups", 200_000);
+
+        run("shared cache", Collections.emptyMap(), customers, lookups);
+        run("no cache", Collections.singletonMap("javax.persistence.sharedCache.mode", "NONE"), customers, lookups);
+    }
+
+    private static void run(String name, Map<String, String> properties, int customers, int lookups) {
+        // beide Läufe beginnen mit einer leeren Datenbank
+        Map<String, Object> recreate = new HashMap<>(properties);
+        recreate.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("assignment", recreate);
+        try {
+            AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+            List<String> emails = new ArrayList<>();
+            for (int i = 0; i < customers; i++) {
+                String email = "mail" + i + "@campus02.at";
+                repository.create(BaseSpecification.prepareCustomer("last" + i, "first" + i, email));
+                emails.add(email);
+            }
+            List<Integer> providerIds = new ArrayList<>();
+            List<Provider> providers = new ArrayList<>();
+            for (int i = 0; i < customers / 10; i++) {
+                providers.add(BaseSpecification.prepareProvider(ProviderType.ALLGMEINMEDIZIN, "Gasse " + i + ", Graz"));
+            }
+            repository.createAll(providers);
+            providers.forEach(provider -> providerIds.add(provider.getId()));
+
+            Random random = new Random(42);
+            // warm-up: JIT und Cache füllen
+            for (int i = 0; i < lookups / 10; i++) {
+                repository.read(emails.get(random.nextInt(emails.size())));
+                repository.read(providerIds.get(random.nextInt(providerIds.size())));
+            }
+            repository.getCacheStatistics().reset();
+
+            long begin = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                repository.read(emails.get(random.nextInt(emails.size())));
+                repository.read(providerIds.get(random.nextInt(providerIds.size())));
+            }
+            double micros = (System.nanoTime() - begin) / 1e3 / (2.0 * lookups);
+            CacheStatistics statistics = repository.getCacheStatistics();
+            System.out.printf("%s: %d lookups, %.1f us/lookup, customer hit ratio %.2f, provider hit ratio %.2f%n",
+                    name, 2 * lookups, micros,
+                    statistics.getHitRatio(Customer.class), statistics.getHitRatio(Provider.class));
+        } finally {
+            factory.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.identitymaps.SoftCacheWeakIdentityMap;
+import org.eclipse.persistence.jpa.JpaCache;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CacheSpecification extends BaseSpecification {
+
+    private JpaCache cache() {
+        return entityManagerFactory.getCache().unwrap(JpaCache.class);
+    }
+
+    @Test
+    public void ca01_keyLookupsAreServedFromSharedCache() {
+        // given
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        repository.getCacheStatistics().reset();
+
+        // when
+        repository.read(email);
+        cache().evictAll();
+        repository.read(email);
+        repository.read(email);
+
+        // then
+        assertThat(repository.getCacheStatistics().getHits(Customer.class), is(2L));
+        assertThat(repository.getCacheStatistics().getMisses(Customer.class), is(1L));
+        assertThat(repository.getCacheStatistics().getHitRatio(Customer.class), closeTo(2.0 / 3, 0.001));
+    }
+
+    @Test
+    public void ca02_updatesThroughRepositoryAreVisibleInCache() {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = createProvider(prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1));
+        repository.read(email);
+        repository.read(provider.getId());
+
+        // when
+        customer.setFirstname("changed");
+        repository.update(customer);
+        provider.setAddress(graz_doc2);
+        repository.update(provider);
+
+        // then
+        assertThat(repository.read(email).getFirstname(), is("changed"));
+        assertThat(repository.read(provider.getId()).getAddress(), is(graz_doc2));
+        assertThat(repository.getCacheStatistics().getMisses(Provider.class), is(0L));
+    }
+
+    @Test
+    public void ca03_reserveAndCancelEvictOnlyTheChangedAppointment() {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 11, 0)));
+        createProvider(provider);
+        Appointment reserved = provider.getAppointments().get(0);
+        Appointment other = provider.getAppointments().get(1);
+
+        // when
+        repository.reserve(reserved, customer);
+
+        // then
+        assertThat(cache().isValid(Appointment.class, reserved.getId()), is(false));
+        assertThat(cache().isValid(Appointment.class, other.getId()), is(true));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, reserved.getId()).getCustomer(), is(customer));
+
+        // when
+        repository.cancel(reserved, customer);
+
+        // then
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, reserved.getId()).getCustomer(), is(nullValue()));
+        assertThat(cache().isValid(Appointment.class, other.getId()), is(true));
+    }
+
+    @Test
+    public void ca04_deleteCustomersEvictsDeletedCustomers() {
+        // given
+        repository.create(prepareCustomer(lastname, firstname, "a@campus02.at"));
+        repository.create(prepareCustomer(lastname, firstname, "b@campus02.at"));
+        repository.read("a@campus02.at");
+
+        // when
+        repository.deleteCustomers(Arrays.asList("a@campus02.at"));
+
+        // then
+        assertThat(repository.read("a@campus02.at"), is(nullValue()));
+        assertThat(cache().isValid(Customer.class, "b@campus02.at"), is(true));
+    }
+
+    @Test
+    public void ca05_cacheIsConfiguredPerEntity() {
+        // when
+        ClassDescriptor customer = JpaHelper.getServerSession(entityManagerFactory).getDescriptor(Customer.class);
+        ClassDescriptor provider = JpaHelper.getServerSession(entityManagerFactory).getDescriptor(Provider.class);
+        ClassDescriptor trigram = JpaHelper.getServerSession(entityManagerFactory).getDescriptor(AddressTrigram.class);
+
+        // then
+        assertThat(customer.getIdentityMapClass(), is(equalTo(SoftCacheWeakIdentityMap.class)));
+        assertThat(customer.getIdentityMapSize(), is(10000));
+        assertThat(((TimeToLiveCacheInvalidationPolicy) customer.getCacheInvalidationPolicy()).getTimeToLive(), is(600000L));
+        assertThat(provider.getIdentityMapSize(), is(1000));
+        assertThat(trigram.isIsolated(), is(true));
+    }
+}
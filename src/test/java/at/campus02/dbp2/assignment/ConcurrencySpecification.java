@@ -0,0 +1,149 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ConcurrencySpecification extends BaseSpecification {
+
+    private static final int THREADS = 32;
+
+    private List<Boolean> runConcurrently(int count, IntPredicate work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> work.test(index)));
+            }
+            List<Boolean> results = new ArrayList<>();
+            for (Future<Boolean> future : futures) {
+                results.add(future.get(60, TimeUnit.SECONDS));
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cc01_repositoryCanBeUsedFromManyThreadsInParallel() throws Exception {
+        // given
+        IntPredicate scenario = i -> {
+            String key = String.format("%03d", i);
+            Customer customer = prepareCustomer("last" + key, "first" + key, "mail" + key + "@campus02.at");
+            Provider provider = prepareProvider(ProviderType.PHYSIOTHERAPIE, "Gasse " + key + ", Ort" + key);
+            Appointment appointment1 = prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(i));
+            Appointment appointment2 = prepareAppointment(LocalDateTime.of(2021, 12, 1, 8, 0).plusHours(i).plusMinutes(30));
+            provider.getAppointments().add(appointment1);
+            provider.getAppointments().add(appointment2);
+
+            boolean ok = repository.create(customer);
+            ok &= repository.create(provider);
+            ok &= customer.equals(repository.read(customer.getEmail()));
+            ok &= provider.equals(repository.read(provider.getId()));
+
+            customer.setFirstname("changed" + key);
+            ok &= repository.update(customer) != null;
+            ok &= repository.findCustomersBy("last" + key, "changed" + key).size() == 1;
+            ok &= repository.findProvidersBy(ProviderType.PHYSIOTHERAPIE, "Ort" + key).size() == 1;
+            ok &= repository.findAppointmentsAt("Ort" + key).size() == 2;
+            ok &= repository.findAppointments(appointment1.getTime(), appointment2.getTime()).contains(appointment1);
+
+            ok &= repository.reserve(appointment1, customer);
+            ok &= repository.getAppointmentsFor(customer).size() == 1;
+            ok &= repository.cancel(appointment1, customer);
+            ok &= repository.getAppointmentsFor(customer).isEmpty();
+
+            provider.getAppointments().remove(appointment2);
+            ok &= repository.update(provider).getAppointments().size() == 1;
+            ok &= repository.delete(provider);
+            ok &= repository.delete(customer);
+            return ok;
+        };
+
+        // when
+        List<Boolean> results = runConcurrently(THREADS, scenario);
+
+        // then
+        assertThat(results, everyItem(is(true)));
+        assertThat(entityManager.createQuery("select c from Customer c").getResultList().isEmpty(), is(true));
+        assertThat(entityManager.createQuery("select p from Provider p").getResultList().isEmpty(), is(true));
+        assertThat(entityManager.createQuery("select a from Appointment a").getResultList().isEmpty(), is(true));
+    }
+
+    @Test
+    public void cc02_concurrentReadersSeeCommittedData() throws Exception {
+        // given
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+        createProvider(provider);
+
+        // when
+        List<Boolean> results = runConcurrently(THREADS * 4, i ->
+                customer.equals(repository.read(email))
+                        && provider.equals(repository.read(provider.getId()))
+                        && repository.findAppointmentsAt("graz").size() == 1
+                        && repository.findAppointments(null, null).size() == 1);
+
+        // then
+        assertThat(results, everyItem(is(true)));
+    }
+
+    @Test
+    public void cc03_concurrentReservationsOfSameAppointmentHaveExactlyOneWinner() throws Exception {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0));
+        provider.getAppointments().add(appointment);
+        createProvider(provider);
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < THREADS * 2; i++) {
+            customers.add(createCustomer(prepareCustomer(lastname, firstname, "mail" + i + "@campus02.at")));
+        }
+
+        // when
+        int version = appointment.getVersion();
+        List<Boolean> results = runConcurrently(customers.size(), i -> repository.reserve(appointment, customers.get(i)));
+
+        // then
+        assertThat(results.stream().filter(success -> success).count(), is(1L));
+        Customer winner = customers.get(results.indexOf(true));
+        entityManager.clear();
+        Appointment fromDb = entityManager.find(Appointment.class, appointment.getId());
+        assertThat(fromDb.getCustomer(), is(winner));
+        assertThat(appointment.getCustomer(), is(winner));
+        assertThat(fromDb.getVersion(), is(version + 1));
+    }
+
+    @Test
+    public void cc04_onlyOwnerCanCancelAndOnlyOnce() throws Exception {
+        // given
+        Customer owner = createCustomer(prepareCustomer(lastname, firstname, email));
+        Customer other = createCustomer(prepareCustomer(lastname, firstname, "other." + email));
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        Appointment appointment = prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0));
+        appointment.setCustomer(owner);
+        provider.getAppointments().add(appointment);
+        createProvider(provider);
+
+        // when
+        List<Boolean> results = runConcurrently(THREADS, i -> repository.cancel(appointment, i % 2 == 0 ? owner : other));
+
+        // then
+        assertThat(results.stream().filter(success -> success).count(), is(1L));
+        entityManager.clear();
+        assertThat(entityManager.find(Appointment.class, appointment.getId()).getCustomer(), is(nullValue()));
+    }
+}
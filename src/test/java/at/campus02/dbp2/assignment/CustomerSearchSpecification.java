@@ -0,0 +1,104 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CustomerSearchSpecification extends BaseSpecification {
+
+    private void setupTestData() {
+        createCustomer(prepareCustomer("Dornacher", "Dorothea", "dd@campus02.at"));
+        createCustomer(prepareCustomer("Dorn", "Hans", "dh@campus02.at"));
+        createCustomer(prepareCustomer("Adorno", "Theodor", "at@campus02.at"));
+        createCustomer(prepareCustomer("Dorn_Huber", "Anna", "da@campus02.at"));
+    }
+
+    @Test
+    public void cs01_exactMatchIgnoresCase() {
+        // given
+        setupTestData();
+
+        // when
+        List<Customer> customers = repository.findCustomersBy("DORN", null, MatchMode.EXACT);
+
+        // then
+        assertThat(customers, hasSize(1));
+        assertThat(customers.get(0).getEmail(), is("dh@campus02.at"));
+    }
+
+    @Test
+    public void cs02_prefixMatchFindsNamesStartingWithSearchTerm() {
+        // given
+        setupTestData();
+
+        // when
+        List<Customer> customers = repository.findCustomersBy("dorn", null, MatchMode.PREFIX);
+
+        // then
+        assertThat(customers, hasSize(3));
+        assertThat(customers.get(0).getLastname(), is("Dorn"));
+        assertThat(customers, not(hasItem(hasProperty("lastname", is("Adorno")))));
+    }
+
+    @Test
+    public void cs03_containsMatchIsDefault() {
+        // given
+        setupTestData();
+
+        // when
+        List<Customer> defaultMode = repository.findCustomersBy("dorn", null);
+        List<Customer> nullMode = repository.findCustomersBy("dorn", null, null);
+
+        // then
+        assertThat(defaultMode, hasSize(4));
+        assertThat(nullMode, is(defaultMode));
+    }
+
+    @Test
+    public void cs04_firstnameUsesSameMatchMode() {
+        // given
+        setupTestData();
+
+        // when
+        List<Customer> prefix = repository.findCustomersBy("dorn", "doro", MatchMode.PREFIX);
+        List<Customer> exact = repository.findCustomersBy("dornacher", "doro", MatchMode.EXACT);
+
+        // then
+        assertThat(prefix, hasSize(1));
+        assertThat(prefix.get(0).getEmail(), is("dd@campus02.at"));
+        assertThat(exact, is(empty()));
+    }
+
+    @Test
+    public void cs05_wildcardsAreMatchedLiterally() {
+        // given
+        setupTestData();
+
+        // when
+        List<Customer> underscore = repository.findCustomersBy("dorn_", null, MatchMode.PREFIX);
+        List<Customer> percent = repository.findCustomersBy("d%n", null, MatchMode.CONTAINS);
+
+        // then
+        assertThat(underscore, hasSize(1));
+        assertThat(underscore.get(0).getEmail(), is("da@campus02.at"));
+        assertThat(percent, is(empty()));
+    }
+
+    @Test
+    public void cs06_renamedCustomerIsFoundByNewName() {
+        // given
+        setupTestData();
+        Customer customer = repository.read("dh@campus02.at");
+
+        // when
+        customer.setLastname("Zimmermann");
+        repository.update(customer);
+
+        // then
+        assertThat(repository.findCustomersBy("zimmer", null, MatchMode.PREFIX), contains(customer));
+        assertThat(repository.findCustomersBy("dorn", null, MatchMode.EXACT), is(empty()));
+    }
+}
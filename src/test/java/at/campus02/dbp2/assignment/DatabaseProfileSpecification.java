@@ -0,0 +1,161 @@
+package at.campus02.dbp2.assignment;
+
+import org.apache.derby.drda.NetworkServerControl;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.server.ConnectionPool;
+import org.eclipse.persistence.sessions.server.Server;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DatabaseProfileSpecification extends BaseSpecification {
+
+    private static final String SERVER_CLASSPATH = "at.campus02.dbp2.database.server.classpath";
+
+    @Test
+    public void db01_readAndWriteConnectionPoolsAreConfigured() {
+        // given
+        Server server = JpaHelper.getServerSession(entityManagerFactory);
+
+        // when
+        ConnectionPool write = server.getDefaultConnectionPool();
+        ConnectionPool read = server.getReadConnectionPool();
+
+        // then
+        assertThat(write.getMinNumberOfConnections(), is(4));
+        assertThat(write.getMaxNumberOfConnections(), is(32));
+        assertThat(write.getWaitTimeout(), is(10000));
+        assertThat(read, is(not(sameInstance(write))));
+        assertThat(read.getMinNumberOfConnections(), is(4));
+        assertThat(read.getMaxNumberOfConnections(), is(64));
+        assertThat(read.getWaitTimeout(), is(10000));
+        assertThat(write.getTotalNumberOfConnections(), is(greaterThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void db02_profilesOverrideOnlyTheConnection() {
+        // when
+        Map<String, Object> embedded = DatabaseProfile.EMBEDDED.properties("localhost", 1527);
+        Map<String, Object> network = DatabaseProfile.NETWORK.properties("db.local", 1600);
+
+        // then
+        assertThat(embedded.isEmpty(), is(true));
+        assertThat(network, hasEntry(PersistenceUnitProperties.JDBC_URL, "jdbc:derby://db.local:1600/database;create=true"));
+        assertThat(network, hasEntry(PersistenceUnitProperties.JDBC_DRIVER, "org.apache.derby.jdbc.ClientDriver"));
+        assertThat(network, hasEntry(PersistenceUnitProperties.JDBC_USER, "APP"));
+        assertThat(network, hasEntry(PersistenceUnitProperties.SHARED_CACHE_MODE, "NONE"));
+        assertThat(network, hasEntry(AppointmentRepositoryFactory.OCCUPANCY_FILE, ""));
+        assertThat(DatabaseProfile.current(), is(DatabaseProfile.EMBEDDED));
+        System.setProperty(DatabaseProfile.PROFILE, "cloud");
+        try {
+            assertThrows(IllegalArgumentException.class, DatabaseProfile::current);
+        } finally {
+            System.clearProperty(DatabaseProfile.PROFILE);
+        }
+    }
+
+    @Test
+    public void db03_processesShareTheDatabaseThroughTheNetworkServer(@TempDir Path home) throws Exception {
+        // given: der Server läuft wie mit "gradle derbyServer" in einem eigenen Prozess,
+        // zwei Factories gegen denselben Server stehen für zwei Repository-Prozesse
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process process = startServer(home, port);
+        NetworkServerControl server = new NetworkServerControl(InetAddress.getByName("localhost"), port);
+        System.setProperty(DatabaseProfile.PROFILE, "network");
+        System.setProperty(DatabaseProfile.PORT, String.valueOf(port));
+        EntityManagerFactory first = null;
+        EntityManagerFactory second = null;
+        try {
+            waitUntilStarted(server, process);
+            first = DatabaseProfile.createEntityManagerFactory(Collections.emptyMap());
+            AppointmentRepository firstRepository = AppointmentRepositoryFactory.get(first);
+
+            Customer customer = prepareCustomer(lastname, firstname, email);
+            Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+            firstRepository.create(customer);
+            firstRepository.create(provider);
+            firstRepository.read(provider.getId());
+
+            second = DatabaseProfile.createEntityManagerFactory(Collections.emptyMap());
+            AppointmentRepository secondRepository = AppointmentRepositoryFactory.get(second);
+
+            // when
+            Customer seen = secondRepository.read(email);
+            // die Trigramme pflegt ein Trigger, dessen Java-Prozedur im Server-Prozess läuft
+            List<Appointment> found = secondRepository.findAppointmentsAt("8020 Graz");
+            boolean reserved = secondRepository.reserve(provider.getAppointments().get(0), seen);
+            boolean reservedAgain = firstRepository.reserve(provider.getAppointments().get(0), customer);
+
+            // then
+            assertThat(seen, is(notNullValue()));
+            assertThat(found, hasSize(1));
+            assertThat(found.get(0).getId(), is(provider.getAppointments().get(0).getId()));
+            assertThat(reserved, is(true));
+            assertThat(reservedAgain, is(false));
+            assertThat(firstRepository.read(provider.getId()).getAppointments().get(0).getCustomer().getEmail(), is(email));
+            assertThat(firstRepository.getAppointmentsFor(customer), hasSize(1));
+        } finally {
+            if (second != null)
+                second.close();
+            if (first != null)
+                first.close();
+            System.clearProperty(DatabaseProfile.PROFILE);
+            System.clearProperty(DatabaseProfile.PORT);
+            try {
+                server.shutdown();
+            } finally {
+                if (!process.waitFor(30, TimeUnit.SECONDS))
+                    process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Startet den Network Server mit dem Classpath der Gradle-Task <code>derbyServer</code> (bzw. dem eigenen, wenn der
+     * Test nicht über Gradle läuft) und der Datenbank unter <code>home</code>.
+     */
+    private static Process startServer(Path home, int port) throws IOException {
+        String classpath = System.getProperty(SERVER_CLASSPATH, System.getProperty("java.class.path"));
+        return new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", classpath,
+                "-Dderby.system.home=" + home,
+                "org.apache.derby.drda.NetworkServerControl",
+                "start", "-h", "localhost", "-p", String.valueOf(port), "-noSecurityManager")
+                .redirectErrorStream(true)
+                .redirectOutput(home.resolve("server.log").toFile())
+                .start();
+    }
+
+    private static void waitUntilStarted(NetworkServerControl server, Process process) throws InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                server.ping();
+                return;
+            } catch (Exception e) {
+                if (attempt >= 100 || !process.isAlive())
+                    throw new IllegalStateException("Derby network server did not start", e);
+                Thread.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.PersistenceUnitUtil;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class FetchPlanSpecification extends BaseSpecification {
+
+    private SqlProfiler profiler;
+    private InstrumentedAppointmentRepository instrumented;
+
+    @BeforeEach
+    public void instrument() {
+        profiler = SqlProfiler.install(entityManagerFactory);
+        instrumented = new InstrumentedAppointmentRepository(repository, "fetch", profiler);
+    }
+
+    @AfterEach
+    public void uninstrument() {
+        instrumented.close();
+        SqlProfiler.uninstall(entityManagerFactory);
+    }
+
+    private void prepareProviders(int count, int appointmentsPerProvider) {
+        List<Provider> providers = new ArrayList<>();
+        for (int p = 0; p < count; p++) {
+            Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, "Gasse " + p + ", 8010 Graz");
+            for (int i = 0; i < appointmentsPerProvider; i++) {
+                provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 8, 0).plusMinutes(15L * i)));
+            }
+            providers.add(provider);
+        }
+        repository.createAll(providers);
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    private SqlCallProfile profileOf(Runnable call) {
+        List<SqlCallProfile> calls = new ArrayList<>();
+        profiler.setListener(calls::add);
+        try {
+            call.run();
+        } finally {
+            profiler.setListener(null);
+        }
+        assertThat(calls, hasSize(1));
+        return calls.get(0);
+    }
+
+    @Test
+    public void fp01_planDecidesWhichAssociationsAreLoaded() {
+        // given
+        prepareProviders(2, 2);
+        PersistenceUnitUtil util = entityManagerFactory.getPersistenceUnitUtil();
+
+        // when
+        List<Appointment> slotOnly = repository.findAppointments(null, null, FetchPlan.SLOT_ONLY);
+        entityManagerFactory.getCache().evictAll();
+        List<Appointment> withProvider = repository.findAppointments(null, null, FetchPlan.SLOT_WITH_PROVIDER);
+
+        // then
+        assertThat(slotOnly, hasSize(4));
+        assertThat(util.isLoaded(slotOnly.get(0), "provider"), is(false));
+        assertThat(withProvider, hasSize(4));
+        for (Appointment appointment : withProvider) {
+            assertThat(util.isLoaded(appointment, "provider"), is(true));
+            assertThat(util.isLoaded(appointment.getProvider(), "appointments"), is(false));
+        }
+    }
+
+    @Test
+    public void fp02_lazyAssociationsAreLoadedOnAccess() {
+        // given
+        prepareProviders(1, 1);
+        Appointment booked = repository.findAppointments(null, null, FetchPlan.BOOKING).get(0);
+        entityManagerFactory.getCache().evictAll();
+        PersistenceUnitUtil util = entityManagerFactory.getPersistenceUnitUtil();
+
+        // when
+        Appointment appointment = repository.findAppointments(null, null, FetchPlan.SLOT_ONLY).get(0);
+
+        // then: der Vergleich lädt keine Beziehungen
+        assertThat(appointment, is(booked));
+        assertThat(util.isLoaded(appointment, "provider"), is(false));
+        assertThat(appointment.getProvider().getAddress(), is("Gasse 0, 8010 Graz"));
+        assertThat(appointment.getCustomer(), is(nullValue()));
+    }
+
+    @Test
+    public void fp03_statementsDoNotGrowWithTheNumberOfProviders() {
+        // given
+        prepareProviders(3, 2);
+        SqlCallProfile few = profileOf(() -> instrumented.findAppointments(null, null, FetchPlan.SLOT_WITH_PROVIDER));
+        prepareProviders(30, 2);
+
+        // when
+        SqlCallProfile many = profileOf(() -> instrumented.findAppointments(null, null, FetchPlan.SLOT_WITH_PROVIDER));
+        entityManagerFactory.getCache().evictAll();
+        SqlCallProfile slotOnly = profileOf(() -> instrumented.findAppointments(null, null, FetchPlan.SLOT_ONLY));
+
+        // then
+        assertThat(few.statements(), is(1));
+        assertThat(many.statements(), is(1));
+        assertThat(many.rowsRead(), is(66L));
+        assertThat(many.isNPlusOne(), is(false));
+        assertThat(slotOnly.statements(), is(1));
+    }
+
+    @Test
+    public void fp04_pagesUseThePlanAndNullMeansSlotWithProvider() {
+        // given
+        prepareProviders(3, 4);
+        PersistenceUnitUtil util = entityManagerFactory.getPersistenceUnitUtil();
+
+        // when
+        AppointmentPage first = repository.findAppointments(null, null, 5, null, FetchPlan.SLOT_ONLY);
+        entityManagerFactory.getCache().evictAll();
+        AppointmentPage second = repository.findAppointments(null, null, 5, first.getNext(), null);
+
+        // then
+        assertThat(first.getAppointments(), hasSize(5));
+        assertThat(util.isLoaded(first.getAppointments().get(0), "provider"), is(false));
+        assertThat(second.getAppointments(), hasSize(5));
+        for (Appointment appointment : second.getAppointments()) {
+            assertThat(util.isLoaded(appointment, "provider"), is(true));
+        }
+    }
+
+    @Test
+    public void fp05_joinFetchFindersRunAFixedNumberOfStatementsWhateverTheResultSize() {
+        // given
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Customer customer = prepareCustomer(lastname, firstname, i + email);
+            repository.create(customer);
+            customers.add(customer);
+        }
+        Customer booker = customers.get(0);
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> statements = new ArrayList<>();
+
+        for (int round = 1; round <= 3; round++) {
+            prepareProviders(5 * round, 2);
+            for (Appointment appointment : repository.findAppointments(null, null, FetchPlan.SLOT_ONLY)) {
+                if (appointment.getId() % 3 == 0)
+                    repository.reserve(appointment, customers.get(1 + appointment.getId() % (customers.size() - 1)));
+            }
+            for (Appointment appointment : repository.findAppointments(null, null, FetchPlan.SLOT_ONLY).subList(0, 2)) {
+                repository.reserve(appointment, booker);
+            }
+            entityManagerFactory.getCache().evictAll();
+
+            // when
+            List<List<Appointment>> results = new ArrayList<>();
+            SqlCallProfile between = profileOf(() -> results.add(
+                    instrumented.findAppointments(null, null, FetchPlan.BOOKING)));
+            entityManagerFactory.getCache().evictAll();
+            SqlCallProfile at = profileOf(() -> results.add(
+                    instrumented.findAppointmentsAt("8010 Graz", FetchPlan.SLOT_WITH_PROVIDER)));
+            entityManagerFactory.getCache().evictAll();
+            SqlCallProfile booked = profileOf(() -> results.add(
+                    instrumented.getAppointmentsFor(booker, FetchPlan.BOOKING)));
+
+            // then
+            sizes.add(results.get(0).size());
+            statements.add(between.statements());
+            statements.add(booked.statements());
+            assertThat(results.get(1), hasSize(results.get(0).size()));
+            assertThat(results.get(2), hasSize(2 * round));
+            for (Appointment appointment : results.get(2)) {
+                assertThat(appointment.getCustomer(), is(booker));
+                assertThat(appointment.getProvider().getAddress(), endsWith("8010 Graz"));
+            }
+            // Kandidaten aus dem Trigramm-Index, danach die Appointments
+            assertThat(at.statements(), is(2));
+            assertThat(at.isNPlusOne() || between.isNPlusOne() || booked.isNPlusOne(), is(false));
+        }
+        assertThat(sizes.get(2), is(greaterThan(sizes.get(0))));
+        assertThat(statements, everyItem(is(1)));
+    }
+}
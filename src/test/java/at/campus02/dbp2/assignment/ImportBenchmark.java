@@ -0,0 +1,49 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Misst den Bulk-Import über {@link AppointmentRepository#createAll(java.util.Collection, int)}.
+ * <p>Aufruf: <code>gradle importBenchmark -Dappointments=1000000 -DperProvider=1000 -DbatchSize=1000</code>
+ */
+public class ImportBenchmark {
+
+    public static void main(String[] args) {
+        int appointments = Integer.getInteger("appointments", 1_000_000);
+        int perProvider = Integer.getInteger("perProvider", 1000);
+        int batchSize = Integer.getInteger("batchSize", AppointmentRepositoryFactory.DEFAULT_BATCH_SIZE);
+
+        List<Provider> providers = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2022, 1, 1, 8, 0);
+        for (int created = 0; created < appointments; created += perProvider) {
+            Provider provider = BaseSpecification.prepareProvider(
+                    ProviderType.values()[providers.size() % ProviderType.values().length],
+                    "Gasse " + providers.size() + ", Graz");
+            for (int i = 0; i < Math.min(perProvider, appointments - created); i++) {
+                provider.getAppointments().add(BaseSpecification.prepareAppointment(start.plusMinutes(15L * i)));
+            }
+            providers.add(provider);
+        }
+
+        // der Import beginnt mit einer leeren Datenbank
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("assignment", Collections.singletonMap(
+                PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE));
+        try {
+            AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+            long begin = System.nanoTime();
+            repository.createAll(providers, batchSize);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%d providers, %d appointments, batch size %d: %.1f s, %.0f inserts/s%n",
+                    providers.size(), appointments, batchSize, seconds, (providers.size() + appointments) / seconds);
+        } finally {
+            factory.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.TypedQuery;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class IndexSpecification extends BaseSpecification {
+
+    private void setupTestData() {
+        List<Provider> providers = new ArrayList<>();
+        for (int p = 0; p < 60; p++) {
+            Provider provider = prepareProvider(ProviderType.values()[p % ProviderType.values().length], "Gasse " + p + ", Graz");
+            for (int a = 0; a < 50; a++) {
+                provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusHours(p * 50L + a)));
+            }
+            providers.add(provider);
+        }
+        repository.createAll(providers);
+        for (int c = 0; c < 100; c++) {
+            Customer customer = prepareCustomer(lastname + c, firstname + c, "mail" + c + "@campus02.at");
+            repository.create(customer);
+            repository.reserve(providers.get(c % providers.size()).getAppointments().get(c % 50), customer);
+        }
+    }
+
+    private String runtimeStatisticsOf(TypedQuery<?> query) throws SQLException {
+        entityManager.getTransaction().begin();
+        try {
+            Connection connection = entityManager.unwrap(Connection.class);
+            try (CallableStatement statement = connection.prepareCall("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)")) {
+                statement.execute();
+            }
+            query.getResultList();
+            try (Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+                rs.next();
+                return rs.getString(1);
+            }
+        } finally {
+            entityManager.getTransaction().rollback();
+        }
+    }
+
+    @Test
+    public void i01_allIndexesExistAfterStartup() throws SQLException {
+        // given
+        entityManager.getTransaction().begin();
+        Connection connection = entityManager.unwrap(Connection.class);
+
+        // when
+        List<SchemaIndexes.Index> missing = SchemaIndexes.missing(connection);
+        entityManager.getTransaction().rollback();
+
+        // then
+        assertThat(missing, is(empty()));
+    }
+
+    @Test
+    public void i02_findAppointmentsUsesIndex() throws SQLException {
+        // given
+        setupTestData();
+
+        // when
+        String statistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Appointment.findFreeBetween", Appointment.class)
+                .setParameter("from", LocalDateTime.of(2021, 11, 2, 8, 0))
+                .setParameter("to", LocalDateTime.of(2021, 11, 2, 12, 0)));
+
+        // then
+        assertThat(statistics, containsString("Index Scan ResultSet for APPOINTMENT"));
+        assertThat(statistics, not(containsString("Table Scan ResultSet for APPOINTMENT")));
+    }
+
+    @Test
+    public void i03_getAppointmentsForUsesIndex() throws SQLException {
+        // given
+        setupTestData();
+
+        // when
+        String statistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Appointment.findByCustomer", Appointment.class)
+                .setParameter("email", "mail7@campus02.at"));
+
+        // then
+        assertThat(statistics, containsString("Index Scan ResultSet for APPOINTMENT"));
+        assertThat(statistics, not(containsString("Table Scan ResultSet for APPOINTMENT")));
+    }
+
+    @Test
+    public void i04_findProvidersByUsesIndex() throws SQLException {
+        // given
+        setupTestData();
+
+        // when
+        String statistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Provider.findByTypeAndAddress", Provider.class)
+                .setParameter("type", ProviderType.KINDERMEDIZIN)
+                .setParameter("addressPart", "%graz%"));
+
+        // then
+        assertThat(statistics, containsString("Index Scan ResultSet for PROVIDER"));
+        assertThat(statistics, not(containsString("Table Scan ResultSet for PROVIDER")));
+    }
+
+    @Test
+    public void i05_addressSearchUsesTrigramIndex() throws SQLException {
+        // given
+        setupTestData();
+        List<String> trigrams = new ArrayList<>(AddressTrigrams.ofSearch("Gasse 42"));
+
+        // when
+        String candidateStatistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("AddressTrigram.findProviderIds", Integer.class)
+                .setParameter("trigrams", trigrams)
+                .setParameter("trigramCount", (long) trigrams.size()));
+        List<Integer> candidates = entityManager
+                .createNamedQuery("AddressTrigram.findProviderIds", Integer.class)
+                .setParameter("trigrams", trigrams)
+                .setParameter("trigramCount", (long) trigrams.size())
+                .getResultList();
+        String appointmentStatistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Appointment.findFreeAtCandidates", Appointment.class)
+                .setParameter("providerIds", candidates)
+                .setParameter("addressPart", "%Gasse 42%"));
+
+        // then
+        assertThat(candidates, hasSize(1));
+        assertThat(candidateStatistics, containsString("Index Scan ResultSet for ADDRESS_TRIGRAM"));
+        assertThat(candidateStatistics, not(containsString("Table Scan ResultSet for ADDRESS_TRIGRAM")));
+        assertThat(appointmentStatistics, not(containsString("Table Scan ResultSet for APPOINTMENT")));
+        assertThat(appointmentStatistics, not(containsString("Table Scan ResultSet for PROVIDER")));
+    }
+
+    @Test
+    public void i06_customerPrefixSearchUsesIndex() throws SQLException {
+        // given
+        setupTestData();
+
+        // when
+        String statistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Customer.findByLastnameAndFirstname", Customer.class)
+                .setParameter("lastname", MatchMode.PREFIX.pattern("Lastname4"))
+                .setParameter("firstname", MatchMode.PREFIX.pattern("Firstname4")));
+
+        // then
+        assertThat(statistics, containsString("Index Scan ResultSet for CUSTOMER"));
+        assertThat(statistics, not(containsString("Table Scan ResultSet for CUSTOMER")));
+    }
+
+    @Test
+    public void i07_deepPageUsesIndexWithoutSorting() throws SQLException {
+        // given
+        setupTestData();
+
+        // when
+        String statistics = runtimeStatisticsOf(entityManager
+                .createNamedQuery("Appointment.findFreeBetweenAfter", Appointment.class)
+                .setParameter("after", LocalDateTime.of(2021, 11, 4, 8, 0))
+                .setParameter("afterId", 0)
+                .setParameter("to", LocalDateTime.of(3000, 1, 1, 0, 0))
+                .setMaxResults(21));
+
+        // then
+        assertThat(statistics, containsString("Index Scan ResultSet for APPOINTMENT"));
+        assertThat(statistics, not(containsString("Table Scan ResultSet for APPOINTMENT")));
+        assertThat(statistics, not(containsString("Sort ResultSet")));
+    }
+}
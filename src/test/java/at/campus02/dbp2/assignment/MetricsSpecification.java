@@ -0,0 +1,174 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MetricsSpecification extends BaseSpecification {
+
+    private InstrumentedAppointmentRepository instrumented;
+
+    @BeforeEach
+    public void instrument() {
+        instrumented = new InstrumentedAppointmentRepository(repository, "spec");
+    }
+
+    @AfterEach
+    public void uninstrument() {
+        instrumented.close();
+    }
+
+    @Test
+    public void me01_callsAndLatenciesAreRecordedPerOperation() {
+        // given
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        for (int i = 0; i < 3; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0).plusHours(i)));
+        }
+        instrumented.create(customer);
+        instrumented.create(provider);
+
+        // when
+        for (Appointment appointment : provider.getAppointments()) {
+            instrumented.reserve(appointment, customer);
+        }
+        instrumented.findAppointmentsAt("graz");
+        instrumented.findAppointmentsAt("wien");
+
+        // then
+        OperationStatistics reserve = instrumented.getMetrics().snapshot("reserve(Appointment,Customer)");
+        assertThat(reserve.calls(), is(3L));
+        assertThat(reserve.errors(), is(0L));
+        assertThat(reserve.p50Millis(), is(greaterThan(0.0)));
+        assertThat(reserve.p50Millis(), is(lessThanOrEqualTo(reserve.p99Millis())));
+        assertThat(reserve.p99Millis(), is(lessThanOrEqualTo(reserve.maxMillis())));
+        assertThat(reserve.callsPerSecond(), is(greaterThan(0.0)));
+        assertThat(instrumented.getMetrics().snapshot("findAppointmentsAt(String)").calls(), is(2L));
+        assertThat(instrumented.getMetrics().snapshot("create(Customer)").calls(), is(1L));
+        assertThat(instrumented.getMetrics().snapshot("create(Provider)").calls(), is(1L));
+        assertThat(instrumented.getMetrics().snapshot("cancel(Appointment,Customer)").calls(), is(0L));
+        assertThat(instrumented.getMetrics().snapshot(), hasSize(35));
+    }
+
+    @Test
+    public void me02_failedCallsAreCountedAsErrors() {
+        // given
+        Customer unknown = prepareCustomer(lastname, firstname, email);
+
+        // when
+        assertThrows(IllegalArgumentException.class, () -> instrumented.update(unknown));
+        instrumented.read(email);
+
+        // then
+        OperationStatistics update = instrumented.getMetrics().snapshot("update(Customer)");
+        assertThat(update.calls(), is(1L));
+        assertThat(update.errors(), is(1L));
+        assertThat(instrumented.getMetrics().snapshot("read(String)").errors(), is(0L));
+    }
+
+    @Test
+    public void me03_metricsAreExposedThroughJmxUntilClosed() throws Exception {
+        // given
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName reserve = new ObjectName("at.campus02.dbp2.assignment:type=AppointmentRepository,name=spec,operation="
+                + ObjectName.quote("reserve(Appointment,Customer)"));
+        instrumented.reserve(null, null);
+        instrumented.reserve(null, null);
+
+        // when
+        Object calls = server.getAttribute(reserve, "Calls");
+        Object p99 = server.getAttribute(reserve, "P99Millis");
+        server.invoke(reserve, "reset", null, null);
+        Object callsAfterReset = server.getAttribute(reserve, "Calls");
+        AppointmentRepository other = new InstrumentedAppointmentRepository(repository, "other");
+        other.close();
+        boolean registeredAfterClose = server.isRegistered(new ObjectName(
+                "at.campus02.dbp2.assignment:type=AppointmentRepository,name=other,operation=" + ObjectName.quote("reserve(Appointment,Customer)")));
+
+        // then
+        assertThat(calls, is(2L));
+        assertThat((Double) p99, is(greaterThanOrEqualTo(0.0)));
+        assertThat(callsAfterReset, is(0L));
+        assertThat(server.queryNames(new ObjectName("at.campus02.dbp2.assignment:name=spec,*"), null), hasSize(35));
+        assertThat(registeredAfterClose, is(false));
+        assertThrows(IllegalStateException.class, () -> new InstrumentedAppointmentRepository(repository, "spec"));
+    }
+
+    @Test
+    public void me04_histogramPercentilesAreWithinBucketPrecision() {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when: 1 µs bis 100 ms, gleich verteilt
+        for (long micros = 1; micros <= 100_000; micros++) {
+            histogram.record(micros * 1000);
+        }
+        long[] counts = histogram.counts();
+
+        // then
+        assertThat(histogram.getCount(), is(100_000L));
+        assertThat(histogram.getMax(), is(100_000_000L));
+        assertThat((double) LatencyHistogram.valueAt(counts, 0.50, histogram.getMax()), is(closeTo(50_000_000, 50_000_000 / 64.0)));
+        assertThat((double) LatencyHistogram.valueAt(counts, 0.99, histogram.getMax()), is(closeTo(99_000_000, 99_000_000 / 64.0)));
+        assertThat((double) LatencyHistogram.valueAt(counts, 0.999, histogram.getMax()), is(closeTo(99_900_000, 99_900_000 / 64.0)));
+        assertThat(LatencyHistogram.valueAt(counts, 1.0, histogram.getMax()), is(100_000_000L));
+        assertThat(histogram.getMean(), is(closeTo(50_000_500, 1)));
+        for (long value : new long[]{0, 1, 127, 128, 129, 1000, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(index, is(lessThan(LatencyHistogram.BUCKETS)));
+            if (index < LatencyHistogram.BUCKETS - 1) {
+                assertThat(LatencyHistogram.highestValueOf(index), is(greaterThanOrEqualTo(value)));
+                assertThat(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value, is(true));
+            }
+        }
+    }
+
+    @Test
+    public void me05_concurrentRecordingLosesNoValues() throws Exception {
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // when
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long offset = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.record(1000 + (i % 5000) * 97L + offset);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        long total = 0;
+        for (long count : histogram.counts()) {
+            total += count;
+        }
+        assertThat(histogram.getCount(), is(800_000L));
+        assertThat(total, is(800_000L));
+        assertThat(histogram.getMax(), is(1000 + 4999 * 97L + 7));
+    }
+}
@@ -0,0 +1,349 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.persistence.Persistence;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class OccupancySpecification extends BaseSpecification {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2021, 11, 1);
+    private static final LocalDateTime MORNING = LocalDateTime.of(2021, 11, 3, 8, 0);
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    @Override
+    public void before() {
+        open(true);
+    }
+
+    private void open(boolean empty) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(AppointmentRepositoryFactory.OCCUPANCY_FILE, directory.resolve("occupancy.calendar").toString());
+        entityManagerFactory = Persistence.createEntityManagerFactory("assignment", properties);
+        if (empty) {
+            clearDatabase(entityManagerFactory);
+        }
+        entityManager = entityManagerFactory.createEntityManager();
+        repository = AppointmentRepositoryFactory.get(entityManagerFactory);
+    }
+
+    private void restart() {
+        repository.getOccupancyCalendar().force();
+        after();
+        open(false);
+    }
+
+    private AvailabilityIndex availability() {
+        return ((AppointmentRepositoryFactory) repository).availability();
+    }
+
+    @Test
+    public void oc01_bitsTrackFreeQuarterHours() {
+        // given
+        OccupancyCalendar calendar = OccupancyCalendar.open(directory.resolve("calendar"), FIRST_DAY, 30, 10);
+
+        // when
+        calendar.setFree(3, MORNING, true);
+        calendar.setFree(3, MORNING.plusMinutes(10), true);
+        calendar.setFree(3, MORNING.plusHours(2), true);
+        calendar.setFree(4, MORNING, true);
+        calendar.setFree(4, MORNING, false);
+        boolean outside = calendar.setFree(10, MORNING, true) || calendar.setFree(3, MORNING.plusDays(30), true);
+
+        // then
+        assertThat(outside, is(false));
+        assertThat(calendar.isFree(3, MORNING.plusMinutes(14)), is(true));
+        assertThat(calendar.isFree(3, MORNING.plusMinutes(15)), is(false));
+        assertThat(calendar.isFree(4, MORNING), is(false));
+        assertThat(calendar.countFree(3, MORNING.toLocalDate()), is(2));
+        assertThat(calendar.freeCount(), is(2L));
+        assertThat(OccupancyCalendar.toTime(calendar.nextFree(3, MORNING.plusMinutes(20), MORNING.plusDays(5))),
+                is(MORNING.plusHours(2)));
+        assertThat(calendar.nextFree(3, MORNING.plusHours(3), MORNING.plusDays(5)), is(-1L));
+        assertThat(calendar.nextFree(3, FIRST_DAY.atStartOfDay(), MORNING.plusMinutes(1)),
+                is(calendar.nextFree(3, MORNING, MORNING)));
+    }
+
+    @Test
+    public void oc02_calendarSurvivesReopening() {
+        // given
+        Path file = directory.resolve("calendar");
+        OccupancyCalendar calendar = OccupancyCalendar.open(file, FIRST_DAY, 30, 10);
+        calendar.setFree(7, MORNING, true);
+        calendar.force();
+
+        // when
+        OccupancyCalendar reopened = OccupancyCalendar.open(file, FIRST_DAY, 30, 10);
+        OccupancyCalendar resized = OccupancyCalendar.open(file, FIRST_DAY, 31, 10);
+
+        // then
+        assertThat(reopened.isRestored(), is(true));
+        assertThat(resized.isRestored(), is(false));
+        assertThat(resized.isFree(7, MORNING), is(false));
+        assertThat(resized.freeCount(), is(0L));
+    }
+
+    @Test
+    public void oc03_repositoryKeepsCalendarUpToDate() {
+        // given
+        OccupancyCalendar calendar = repository.getOccupancyCalendar();
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(MORNING));
+        provider.getAppointments().add(prepareAppointment(MORNING.plusMinutes(5)));
+        provider.getAppointments().add(prepareAppointment(MORNING.plusHours(1)));
+        repository.create(provider);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        Appointment early = provider.getAppointments().get(0);
+        Appointment late = provider.getAppointments().get(2);
+
+        // when
+        repository.reserve(early, customer);
+        repository.reserve(late, customer);
+
+        // then
+        assertThat(calendar, is(notNullValue()));
+        assertThat(calendar.isFree(provider.getId(), MORNING), is(true));
+        assertThat(calendar.isFree(provider.getId(), MORNING.plusHours(1)), is(false));
+
+        // when
+        repository.cancel(late, customer);
+        repository.delete(provider);
+
+        // then
+        assertThat(calendar.isFree(provider.getId(), MORNING), is(false));
+        assertThat(calendar.countFree(provider.getId(), MORNING.toLocalDate()), is(0));
+        assertThat(calendar.freeCount(), is(0L));
+    }
+
+    @Test
+    public void oc04_readsDoNotAllocate() {
+        // given
+        OccupancyCalendar calendar = OccupancyCalendar.open(directory.resolve("calendar"), FIRST_DAY, 30, 10);
+        calendar.setFree(3, MORNING.plusHours(4), true);
+        LocalDateTime from = MORNING;
+        LocalDateTime to = MORNING.plusDays(1);
+        LocalDate day = MORNING.toLocalDate();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < 200_000; i++) {
+            sink += calendar.nextFree(3, from, to) + calendar.countFree(3, day) + (calendar.isFree(3, from) ? 1 : 0);
+        }
+
+        // when
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            sink += calendar.nextFree(3, from, to) + calendar.countFree(3, day) + (calendar.isFree(3, from) ? 1 : 0);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // then
+        assertThat(sink, is(not(0L)));
+        assertThat(allocated, is(lessThan(10_000L)));
+    }
+
+    @Test
+    public void oc05_untrackedProvidersAreReportedOnce() {
+        // given
+        OccupancyCalendar calendar = OccupancyCalendar.open(directory.resolve("calendar"), FIRST_DAY, 30, 10);
+        List<String> warnings = new ArrayList<>();
+        AvailabilityIndex availability = new AvailabilityIndex(calendar, warnings::add);
+
+        // when
+        availability.add(new AppointmentSlot(1, MORNING, 12, ProviderType.ALLGMEINMEDIZIN, graz_doc1));
+        availability.add(new AppointmentSlot(2, MORNING.plusHours(1), 12, ProviderType.ALLGMEINMEDIZIN, graz_doc1));
+        availability.add(new AppointmentSlot(3, MORNING.plusDays(40), 4, ProviderType.ALLGMEINMEDIZIN, graz_doc2));
+        availability.add(new AppointmentSlot(4, MORNING, 4, ProviderType.ALLGMEINMEDIZIN, graz_doc2));
+
+        // then
+        assertThat(warnings, hasSize(2));
+        assertThat(warnings.get(0), containsString("provider 12"));
+        assertThat(warnings.get(1), containsString("provider 4"));
+        assertThat(availability.findFree(12, MORNING, MORNING.plusDays(1)), hasSize(2));
+        assertThat(calendar.isFree(4, MORNING), is(true));
+    }
+
+    @Test
+    public void oc06_concurrentChangesInOneQuarterHourKeepTheBit() {
+        // given
+        OccupancyCalendar calendar = OccupancyCalendar.open(directory.resolve("calendar"), FIRST_DAY, 30, 10);
+        AvailabilityIndex availability = new AvailabilityIndex(calendar, null);
+        AppointmentSlot early = new AppointmentSlot(1, MORNING, 3, ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        AppointmentSlot late = new AppointmentSlot(2, MORNING.plusMinutes(5), 3, ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+
+        // when
+        CompletableFuture<Void> booking = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                availability.add(early);
+                availability.remove(early.appointmentId(), 0);
+            }
+        });
+        for (int i = 0; i < 50_000; i++) {
+            availability.remove(late.appointmentId(), 0);
+            availability.add(late);
+        }
+        booking.join();
+
+        // then
+        assertThat(availability.findFree(3, MORNING, MORNING.plusMinutes(14)), contains(late));
+        assertThat(calendar.isFree(3, MORNING), is(true));
+        assertThat(calendar.freeCount(), is(1L));
+    }
+
+    @Test
+    public void oc07_restartOverAValidCalendarLoadsProvidersOnDemand() {
+        // given
+        Provider general = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        general.getAppointments().add(prepareAppointment(MORNING));
+        general.getAppointments().add(prepareAppointment(MORNING.plusMinutes(5)));
+        general.getAppointments().add(prepareAppointment(MORNING.plusHours(1)));
+        Provider children = prepareProvider(ProviderType.KINDERMEDIZIN, graz_doc2);
+        children.getAppointments().add(prepareAppointment(MORNING.plusHours(2)));
+        repository.createAll(Arrays.asList(general, children));
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        repository.reserve(general.getAppointments().get(2), customer);
+
+        // when
+        restart();
+        OccupancyCalendar calendar = repository.getOccupancyCalendar();
+
+        // then: zwei freie Appointments in einer Viertelstunde sind ein Bit, der Kalender bleibt gültig
+        assertThat(calendar.isRestored(), is(true));
+        assertThat(calendar.freeCount(), is(2L));
+        assertThat(availability().freeIdsByProvider(), is(Map.of()));
+        assertThat(calendar.isFree(general.getId(), MORNING), is(true));
+
+        // when
+        List<AppointmentSlot> free = repository.findFreeSlotsByProvider(general.getId(), null, null);
+        repository.reserve(general.getAppointments().get(0), customer);
+        repository.reserve(children.getAppointments().get(0), customer);
+        repository.cancel(general.getAppointments().get(2), customer);
+
+        // then
+        assertThat(free, hasSize(2));
+        assertThat(calendar.isFree(general.getId(), MORNING), is(true));
+        assertThat(calendar.isFree(children.getId(), MORNING.plusHours(2)), is(false));
+        assertThat(calendar.isFree(general.getId(), MORNING.plusHours(1)), is(true));
+        assertThat(calendar.freeCount(), is(2L));
+        assertThat(repository.findFreeSlotsByType(ProviderType.KINDERMEDIZIN, null, null), is(empty()));
+        assertThat(repository.findFreeSlotsByType(ProviderType.ALLGMEINMEDIZIN, null, null), hasSize(2));
+        assertThat(availability().freeIdsByProvider(), is(Map.of(general.getId(),
+                Set.of(general.getAppointments().get(1).getId(), general.getAppointments().get(2).getId()))));
+    }
+
+    @Test
+    public void oc09_asyncLookupsOfProvidersNotYetLoadedWaitForAConnection() throws Exception {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(MORNING));
+        repository.create(provider);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        restart();
+        customer.setFirstname("Neu");
+
+        try (AsyncAppointmentRepository limited = new AsyncAppointmentRepositoryFactory(repository, 1)) {
+            // die einzige Verbindung wartet auf eine Zeile, die eine offene Transaktion gesperrt hat
+            CompletableFuture<Customer> update;
+            CompletableFuture<List<AppointmentSlot>> notLoaded;
+            entityManager.getTransaction().begin();
+            try {
+                entityManager.createNativeQuery("UPDATE CUSTOMER SET LASTNAME = 'Gesperrt' WHERE EMAIL = ?")
+                        .setParameter(1, email)
+                        .executeUpdate();
+                update = limited.update(customer);
+
+                // when
+                notLoaded = limited.findFreeSlotsByProvider(provider.getId(), null, null);
+
+                // then: der Index muss den Provider erst lesen und braucht dafür eine Verbindung
+                assertThat(notLoaded.isDone(), is(false));
+            } finally {
+                entityManager.getTransaction().rollback();
+            }
+            assertThat(notLoaded.get(10, TimeUnit.SECONDS), hasSize(1));
+            assertThat(update.get(10, TimeUnit.SECONDS).getFirstname(), is("Neu"));
+            assertThat(limited.findFreeSlotsByProvider(provider.getId(), null, null).isDone(), is(true));
+        }
+    }
+
+    @Test
+    public void oc08_restartOverAStaleCalendarRebuildsIt() {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(MORNING));
+        provider.getAppointments().add(prepareAppointment(MORNING.plusHours(1)));
+        repository.create(provider);
+        entityManager.getTransaction().begin();
+        entityManager.createQuery("delete from Appointment a where a.id = :id")
+                .setParameter("id", provider.getAppointments().get(1).getId())
+                .executeUpdate();
+        entityManager.getTransaction().commit();
+
+        // when
+        restart();
+        OccupancyCalendar calendar = repository.getOccupancyCalendar();
+
+        // then
+        assertThat(calendar.isRestored(), is(false));
+        assertThat(calendar.freeCount(), is(1L));
+        assertThat(calendar.isFree(provider.getId(), MORNING.plusHours(1)), is(false));
+        assertThat(availability().freeIdsByProvider(), is(Map.of(provider.getId(),
+                Set.of(provider.getAppointments().get(0).getId()))));
+    }
+
+    @Test
+    public void oc10_restartOverACalendarWithLostUpdatesRebuildsItEvenIfTheCountMatches() {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(MORNING));
+        provider.getAppointments().add(prepareAppointment(MORNING.plusHours(1)));
+        repository.create(provider);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        Appointment reserved = provider.getAppointments().get(0);
+        Appointment cancelled = provider.getAppointments().get(1);
+        repository.reserve(cancelled, customer);
+        // ein reserve und ein cancel, deren Bits vor dem Absturz nicht mehr geschrieben wurden
+        entityManager.getTransaction().begin();
+        entityManager.createNativeQuery("UPDATE APPOINTMENT SET CUSTOMER_EMAIL = ? WHERE ID = ?")
+                .setParameter(1, email)
+                .setParameter(2, reserved.getId())
+                .executeUpdate();
+        entityManager.createNativeQuery("UPDATE APPOINTMENT SET CUSTOMER_EMAIL = NULL WHERE ID = ?")
+                .setParameter(1, cancelled.getId())
+                .executeUpdate();
+        entityManager.getTransaction().commit();
+
+        // when
+        restart();
+        OccupancyCalendar calendar = repository.getOccupancyCalendar();
+
+        // then
+        assertThat(calendar.isRestored(), is(false));
+        assertThat(calendar.freeCount(), is(1L));
+        assertThat(calendar.isFree(provider.getId(), MORNING), is(false));
+        assertThat(calendar.isFree(provider.getId(), MORNING.plusHours(1)), is(true));
+        assertThat(availability().freeIdsByProvider(), is(Map.of(provider.getId(), Set.of(cancelled.getId()))));
+    }
+}
@@ -0,0 +1,100 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PagingSpecification extends BaseSpecification {
+
+    private Provider setupTestData(int count) {
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        for (int i = 0; i < count; i++) {
+            // always three slots at the same time, so pages have to be split within one time
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusMinutes(i / 3 * 15)));
+        }
+        createProvider(provider);
+        return provider;
+    }
+
+    private List<Appointment> readAllPages(LocalDateTime from, LocalDateTime to, int pageSize) {
+        List<Appointment> appointments = new ArrayList<>();
+        AppointmentPage page = repository.findAppointments(from, to, pageSize, null);
+        appointments.addAll(page.getAppointments());
+        while (page.hasNext()) {
+            assertThat(page.getAppointments(), hasSize(pageSize));
+            page = repository.findAppointments(from, to, pageSize, page.getNext());
+            appointments.addAll(page.getAppointments());
+        }
+        return appointments;
+    }
+
+    @Test
+    public void p01_pagesContainAllFreeAppointmentsInOrder() {
+        // given
+        setupTestData(100);
+        List<Appointment> expected = repository.findAppointments(null, null);
+
+        // when
+        List<Appointment> paged = readAllPages(null, null, 7);
+
+        // then
+        assertThat(paged, hasSize(expected.size()));
+        assertThat(paged, containsInAnyOrder(expected.toArray()));
+        for (int i = 1; i < paged.size(); i++) {
+            Appointment previous = paged.get(i - 1);
+            Appointment current = paged.get(i);
+            assertThat(previous.getTime().isAfter(current.getTime()), is(false));
+            if (previous.getTime().equals(current.getTime()))
+                assertThat(previous.getId(), lessThan(current.getId()));
+        }
+    }
+
+    @Test
+    public void p02_pagesRespectBoundsAndSkipReservedAppointments() {
+        // given
+        Provider provider = setupTestData(30);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        LocalDateTime from = LocalDateTime.of(2021, 11, 1, 8, 15);
+        LocalDateTime to = LocalDateTime.of(2021, 11, 1, 9, 0);
+        Appointment reserved = provider.getAppointments().stream()
+                .filter(appointment -> appointment.getTime().equals(from))
+                .findFirst().get();
+        repository.reserve(reserved, customer);
+
+        // when
+        List<Appointment> paged = readAllPages(from, to, 2);
+
+        // then
+        assertThat(paged, hasSize(11));
+        assertThat(paged, not(hasItem(reserved)));
+        assertThat(paged, everyItem(hasProperty("customer", nullValue())));
+    }
+
+    @Test
+    public void p03_lastPageHasNoToken() {
+        // given
+        setupTestData(6);
+
+        // when
+        AppointmentPage exact = repository.findAppointments(null, null, 6, null);
+        AppointmentPage empty = repository.findAppointments(LocalDateTime.of(2030, 1, 1, 0, 0), null, 6, null);
+
+        // then
+        assertThat(exact.getAppointments(), hasSize(6));
+        assertThat(exact.hasNext(), is(false));
+        assertThat(empty.getAppointments(), is(empty()));
+        assertThat(empty.getNext(), is(nullValue()));
+    }
+
+    @Test
+    public void p04_invalidPageSizeThrowsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> repository.findAppointments(null, null, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> repository.findAppointments(null, null, 1001, null));
+    }
+}
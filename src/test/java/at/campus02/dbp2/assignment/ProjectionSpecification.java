@@ -0,0 +1,93 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class ProjectionSpecification extends BaseSpecification {
+
+    private Provider doc1;
+    private Provider doc2;
+
+    private void setupTestData() {
+        doc1 = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        doc2 = prepareProvider(ProviderType.KINDERMEDIZIN, graz_doc2);
+        for (int i = 0; i < 5; i++) {
+            doc1.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusHours(i)));
+            doc2.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 2, 8, 0).plusHours(i)));
+        }
+        createProvider(doc1);
+        createProvider(doc2);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        Appointment first = doc1.getAppointments().stream()
+                .filter(appointment -> appointment.getTime().equals(LocalDateTime.of(2021, 11, 1, 8, 0)))
+                .findFirst().get();
+        repository.reserve(first, customer);
+    }
+
+    private static List<Integer> idsOf(List<Appointment> appointments) {
+        return appointments.stream().map(Appointment::getId).collect(Collectors.toList());
+    }
+
+    private static List<Integer> slotIdsOf(List<AppointmentSlot> slots) {
+        return slots.stream().map(AppointmentSlot::appointmentId).collect(Collectors.toList());
+    }
+
+    @Test
+    public void pr01_findSlotsAtMatchesFindAppointmentsAt() {
+        // given
+        setupTestData();
+
+        // when
+        List<AppointmentSlot> slots = repository.findSlotsAt("annenstr");
+        List<AppointmentSlot> all = repository.findSlotsAt("graz");
+
+        // then
+        assertThat(slotIdsOf(slots), containsInAnyOrder(idsOf(repository.findAppointmentsAt("annenstr")).toArray()));
+        assertThat(slots, hasSize(4));
+        assertThat(slotIdsOf(all), containsInAnyOrder(idsOf(repository.findAppointmentsAt("graz")).toArray()));
+        assertThat(repository.findSlotsAt("leibnitz"), is(empty()));
+        assertThat(repository.findSlotsAt(null), is(empty()));
+    }
+
+    @Test
+    public void pr02_slotsCarryProviderData() {
+        // given
+        setupTestData();
+        Appointment appointment = doc2.getAppointments().get(2);
+
+        // when
+        AppointmentSlot slot = repository.findSlotsAt("herrengasse").stream()
+                .filter(s -> s.appointmentId().equals(appointment.getId()))
+                .findFirst().get();
+
+        // then
+        assertThat(slot, is(new AppointmentSlot(appointment.getId(), appointment.getTime(),
+                doc2.getId(), ProviderType.KINDERMEDIZIN, graz_doc2)));
+    }
+
+    @Test
+    public void pr03_findSlotsMatchesFindAppointmentsAndIsSortedByTime() {
+        // given
+        setupTestData();
+        LocalDateTime from = LocalDateTime.of(2021, 11, 1, 9, 0);
+        LocalDateTime to = LocalDateTime.of(2021, 11, 2, 9, 0);
+
+        // when
+        List<AppointmentSlot> slots = repository.findSlots(from, to);
+        List<AppointmentSlot> all = repository.findSlots(null, null);
+
+        // then
+        assertThat(slotIdsOf(slots), containsInAnyOrder(idsOf(repository.findAppointments(from, to)).toArray()));
+        assertThat(slots, hasSize(6));
+        assertThat(all, hasSize(9));
+        for (int i = 1; i < all.size(); i++) {
+            assertThat(all.get(i - 1).time().isAfter(all.get(i).time()), is(false));
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class PublisherSpecification extends BaseSpecification {
+
+    private static final class RecordingSubscriber<T> implements Flow.Subscriber<T> {
+        final List<T> items = new ArrayList<>();
+        Flow.Subscription subscription;
+        boolean completed;
+        Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    private static <T> RecordingSubscriber<T> subscribe(Flow.Publisher<T> publisher) {
+        RecordingSubscriber<T> subscriber = new RecordingSubscriber<>();
+        publisher.subscribe(subscriber);
+        return subscriber;
+    }
+
+    private static <T> List<T> collect(Flow.Publisher<T> publisher) {
+        RecordingSubscriber<T> subscriber = subscribe(publisher);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.error, is(nullValue()));
+        assertThat(subscriber.completed, is(true));
+        return subscriber.items;
+    }
+
+    private Provider setupTestData(String address, LocalDateTime start, int count) {
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, address);
+        for (int i = 0; i < count; i++) {
+            provider.getAppointments().add(prepareAppointment(start.plusMinutes(i * 15L)));
+        }
+        repository.create(provider);
+        return provider;
+    }
+
+    @Test
+    public void pu01_publishersContainSameResultsAsFinders() {
+        // given
+        Provider graz = setupTestData(graz_doc1, LocalDateTime.of(2021, 11, 1, 8, 0), 120);
+        setupTestData(leibnitz_test, LocalDateTime.of(2021, 12, 1, 8, 0), 30);
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        for (int i = 0; i < 5; i++) {
+            repository.reserve(graz.getAppointments().get(i), customer);
+        }
+
+        // when
+        List<Appointment> all = collect(repository.publishAppointments(null, null));
+        List<Appointment> at = collect(repository.publishAppointmentsAt("graz"));
+        List<Provider> providers = collect(repository.publishProvidersBy(ProviderType.ALLGMEINMEDIZIN, "8430"));
+        List<Appointment> booked = collect(repository.publishAppointmentsFor(customer));
+
+        // then
+        assertThat(all, hasSize(145));
+        assertThat(all, containsInAnyOrder(repository.findAppointments(null, null).toArray()));
+        assertThat(at, hasSize(115));
+        assertThat(at, containsInAnyOrder(repository.findAppointmentsAt("graz").toArray()));
+        assertThat(providers, contains(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "8430").toArray()));
+        assertThat(booked, hasSize(5));
+        assertThat(booked, containsInAnyOrder(repository.getAppointmentsFor(customer).toArray()));
+    }
+
+    @Test
+    public void pu02_onlyRequestedElementsAreDelivered() {
+        // given
+        setupTestData(graz_doc1, LocalDateTime.of(2021, 11, 1, 8, 0), 50);
+        RecordingSubscriber<Appointment> subscriber = subscribe(repository.publishAppointments(null, null));
+
+        // when
+        List<Integer> delivered = new ArrayList<>();
+        delivered.add(subscriber.items.size());
+        subscriber.subscription.request(3);
+        delivered.add(subscriber.items.size());
+        subscriber.subscription.request(20);
+        delivered.add(subscriber.items.size());
+        boolean completedEarly = subscriber.completed;
+        subscriber.subscription.request(100);
+
+        // then
+        assertThat(delivered, contains(0, 3, 23));
+        assertThat(completedEarly, is(false));
+        assertThat(subscriber.items, hasSize(50));
+        assertThat(subscriber.completed, is(true));
+        assertThat(subscriber.error, is(nullValue()));
+    }
+
+    @Test
+    public void pu03_rowsAreReadOnlyWhenRequested() {
+        // given
+        setupTestData(graz_doc1, LocalDateTime.of(2021, 11, 1, 8, 0), 100);
+        RecordingSubscriber<Appointment> subscriber = subscribe(repository.publishAppointments(null, null));
+        subscriber.subscription.request(10);
+
+        // when: Termine, die erst nach dem ersten Block angelegt werden, sind für den offenen Cursor noch sichtbar
+        setupTestData(graz_doc2, LocalDateTime.of(2022, 1, 1, 8, 0), 5);
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> subscriber.subscription.request(Long.MAX_VALUE));
+
+        // then
+        assertThat(subscriber.items, hasSize(105));
+        assertThat(subscriber.completed, is(true));
+    }
+
+    @Test
+    public void pu04_cancelAndRequestsFromOnNextAreHandled() {
+        // given
+        setupTestData(graz_doc1, LocalDateTime.of(2021, 11, 1, 8, 0), 30);
+        RecordingSubscriber<Appointment> cancelling = subscribe(repository.publishAppointments(null, null));
+        List<Appointment> oneByOne = new ArrayList<>();
+        boolean[] completed = new boolean[1];
+
+        // when
+        cancelling.subscription.request(5);
+        cancelling.subscription.cancel();
+        cancelling.subscription.request(5);
+        repository.publishAppointments(null, null).subscribe(new Flow.Subscriber<Appointment>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Appointment item) {
+                oneByOne.add(item);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0] = true;
+            }
+        });
+
+        // then
+        assertThat(cancelling.items, hasSize(5));
+        assertThat(cancelling.completed, is(false));
+        assertThat(oneByOne, hasSize(30));
+        assertThat(completed[0], is(true));
+    }
+
+    @Test
+    public void pu05_invalidArgumentsAndRequestsAreReported() {
+        // given
+        setupTestData(graz_doc1, LocalDateTime.of(2021, 11, 1, 8, 0), 10);
+
+        // when
+        List<Appointment> nullAddress = collect(repository.publishAppointmentsAt(null));
+        List<Appointment> unknownAddress = collect(repository.publishAppointmentsAt("Wien"));
+        List<Provider> nullType = collect(repository.publishProvidersBy(null, "graz"));
+        List<Appointment> nullCustomer = collect(repository.publishAppointmentsFor(null));
+        RecordingSubscriber<Appointment> invalid = subscribe(repository.publishAppointments(null, null));
+        invalid.subscription.request(0);
+
+        // then
+        assertThat(nullAddress, is(empty()));
+        assertThat(unknownAddress, is(empty()));
+        assertThat(nullType, is(empty()));
+        assertThat(nullCustomer, is(empty()));
+        assertThat(invalid.error, is(instanceOf(IllegalArgumentException.class)));
+        assertThat(invalid.items, is(empty()));
+    }
+}
@@ -0,0 +1,195 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SchemaBootstrapSpecification extends BaseSpecification {
+
+    @Test
+    public void sb01_completeSchemaIsOnlyValidated() throws SQLException {
+        // given: get() hat das Schema bereits aufgebaut
+
+        // when
+        boolean migrated = SchemaBootstrap.ensure(entityManagerFactory);
+
+        // then
+        assertThat(migrated, is(false));
+        assertThat(scalar("SELECT MAX(VERSION) FROM SCHEMA_VERSION"), is(SchemaBootstrap.VERSION));
+    }
+
+    @Test
+    public void sb02_restartWithoutDdlKeepsTheData() {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+        repository.create(provider);
+        repository.create(prepareCustomer(lastname, firstname, email));
+        repository.close();
+        entityManager.close();
+        entityManagerFactory.close();
+
+        // when
+        entityManagerFactory = Persistence.createEntityManagerFactory("assignment");
+        entityManager = entityManagerFactory.createEntityManager();
+        repository = AppointmentRepositoryFactory.get(entityManagerFactory);
+
+        // then
+        assertThat(repository.read(email), is(notNullValue()));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "annen"), hasSize(1));
+        assertThat(repository.findFreeSlotsByProvider(provider.getId(), null, null), hasSize(1));
+        assertThat(SchemaBootstrap.ensure(entityManagerFactory), is(false));
+    }
+
+    @Test
+    public void sb03_missingIndexesTriggersAndColumnsAreAddedWithoutLosingData() throws SQLException {
+        // given
+        repository.create(prepareCustomer("Müller", firstname, email));
+        repository.create(prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1));
+        execute("DROP INDEX APPOINTMENT_TIME",
+                "DROP TRIGGER PROVIDER_TRIGRAMS_INSERT",
+                "DELETE FROM ADDRESS_TRIGRAM",
+                "ALTER TABLE CUSTOMER DROP COLUMN LASTNAME_SEARCH");
+
+        // when
+        List<String> missing = missing();
+        boolean migrated = SchemaBootstrap.ensure(entityManagerFactory);
+
+        // then
+        assertThat(missing, containsInAnyOrder("index APPOINTMENT_TIME", "trigger PROVIDER_TRIGRAMS",
+                "column CUSTOMER.LASTNAME_SEARCH", "index CUSTOMER_NAME_SEARCH"));
+        assertThat(migrated, is(true));
+        assertThat(missing(), is(empty()));
+        assertThat(repository.findCustomersBy("müller", null), hasSize(1));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "annen"), hasSize(1));
+        repository.create(prepareProvider(ProviderType.PHYSIOTHERAPIE, graz_doc2));
+        assertThat(repository.findProvidersBy(ProviderType.PHYSIOTHERAPIE, "herren"), hasSize(1));
+    }
+
+    @Test
+    public void sb04_newerSchemaVersionIsRejected() throws SQLException {
+        // given
+        execute("INSERT INTO SCHEMA_VERSION (VERSION, APPLIED) VALUES (" + (SchemaBootstrap.VERSION + 1) + ", CURRENT_TIMESTAMP)");
+
+        // when / then
+        try {
+            assertThrows(IllegalStateException.class, () -> SchemaBootstrap.ensure(entityManagerFactory));
+        } finally {
+            execute("DELETE FROM SCHEMA_VERSION WHERE VERSION > " + SchemaBootstrap.VERSION);
+        }
+    }
+
+    @Test
+    public void sb05_columnsWithOtherTypeOrNullabilityAreRejected() throws SQLException {
+        // given
+        execute("ALTER TABLE PROVIDER ALTER COLUMN ADDRESS NOT NULL",
+                "ALTER TABLE PROVIDER DROP COLUMN TYPE",
+                "ALTER TABLE PROVIDER ADD COLUMN TYPE VARCHAR(20)");
+
+        try {
+            // when
+            List<String> missing = missing();
+            IllegalStateException failure = assertThrows(IllegalStateException.class,
+                    () -> SchemaBootstrap.ensure(entityManagerFactory));
+
+            // then
+            assertThat(missing, hasItems("nullability PROVIDER.ADDRESS: VARCHAR NOT NULL instead of VARCHAR NULL",
+                    "type PROVIDER.TYPE: VARCHAR NULL instead of INTEGER NULL"));
+            assertThat(failure.getMessage(), containsString("PROVIDER."));
+        } finally {
+            recreate();
+        }
+    }
+
+    @Test
+    public void sb06_concurrentStartsRecordTheVersionOnce() throws Exception {
+        // given
+        execute("DROP TABLE SCHEMA_VERSION");
+        int processes = 4;
+        CyclicBarrier start = new CyclicBarrier(processes);
+        ExecutorService executor = Executors.newFixedThreadPool(processes);
+
+        // when
+        List<Future<Boolean>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < processes; i++) {
+                results.add(executor.submit(() -> {
+                    start.await(10, TimeUnit.SECONDS);
+                    return SchemaBootstrap.ensure(entityManagerFactory);
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // then
+        assertThat(scalar("SELECT COUNT(*) FROM SCHEMA_VERSION"), is(1));
+        assertThat(scalar("SELECT MAX(VERSION) FROM SCHEMA_VERSION"), is(SchemaBootstrap.VERSION));
+        assertThat(SchemaBootstrap.ensure(entityManagerFactory), is(false));
+    }
+
+    /**
+     * Die Datenbank bleibt für die folgenden Tests erhalten, ein unbrauchbares Schema muss daher neu angelegt werden.
+     */
+    private void recreate() {
+        after();
+        Map<String, Object> recreate = new HashMap<>();
+        recreate.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+        entityManagerFactory = Persistence.createEntityManagerFactory("assignment", recreate);
+        entityManager = entityManagerFactory.createEntityManager();
+        repository = AppointmentRepositoryFactory.get(entityManagerFactory);
+    }
+
+    private List<String> missing() throws SQLException {
+        entityManager.getTransaction().begin();
+        try {
+            return SchemaBootstrap.missing(org.eclipse.persistence.jpa.JpaHelper.getDatabaseSession(entityManagerFactory),
+                    entityManager.unwrap(Connection.class));
+        } finally {
+            entityManager.getTransaction().rollback();
+        }
+    }
+
+    private int scalar(String sql) throws SQLException {
+        entityManager.getTransaction().begin();
+        try (Statement statement = entityManager.unwrap(Connection.class).createStatement();
+             java.sql.ResultSet rs = statement.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            entityManager.getTransaction().rollback();
+        }
+    }
+
+    private void execute(String... statements) throws SQLException {
+        entityManager.getTransaction().begin();
+        try (Statement statement = entityManager.unwrap(Connection.class).createStatement()) {
+            for (String sql : statements) {
+                statement.executeUpdate(sql);
+            }
+        }
+        entityManager.getTransaction().commit();
+    }
+}
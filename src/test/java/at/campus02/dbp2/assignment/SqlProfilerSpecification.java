@@ -0,0 +1,187 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SqlProfilerSpecification extends BaseSpecification {
+
+    private SqlProfiler profiler;
+    private InstrumentedAppointmentRepository instrumented;
+
+    @BeforeEach
+    public void instrument() {
+        profiler = SqlProfiler.install(entityManagerFactory);
+        instrumented = new InstrumentedAppointmentRepository(repository, "sql", profiler);
+    }
+
+    @AfterEach
+    public void uninstrument() {
+        instrumented.close();
+        SqlProfiler.uninstall(entityManagerFactory);
+    }
+
+    @Test
+    public void sp01_statementsAreAttributedToTheRepositoryMethod() {
+        // given
+        repository.create(prepareCustomer(lastname, firstname, email));
+        entityManagerFactory.getCache().evictAll();
+        List<SqlCallProfile> calls = new ArrayList<>();
+        profiler.setListener(calls::add);
+
+        // when
+        instrumented.read(email);
+        instrumented.read(email);
+        repository.read("unknown@campus02.at");
+
+        // then
+        assertThat(calls, hasSize(2));
+        assertThat(calls.get(0).operation(), is("read(String)"));
+        assertThat(calls.get(0).statements(), is(1));
+        assertThat(calls.get(0).rowsRead(), is(1L));
+        assertThat(calls.get(0).sqlMillis(), is(lessThanOrEqualTo(calls.get(0).totalMillis())));
+        assertThat(calls.get(1).statements(), is(0));
+        SqlStatistics read = profiler.snapshot("read(String)");
+        assertThat(read.calls(), is(2L));
+        assertThat(read.statements(), is(1L));
+        assertThat(read.statementsPerCall(), is(0.5));
+        assertThat(profiler.snapshot("create(Customer)"), is(nullValue()));
+    }
+
+    @Test
+    public void sp02_lazyLoadsPerRowAreReportedAsNPlusOne() {
+        // given
+        for (String address : new String[]{graz_doc1, graz_doc2, graz_test, leibnitz_test}) {
+            Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, address);
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 11, 0)));
+            repository.create(provider);
+        }
+        entityManagerFactory.getCache().evictAll();
+
+        // when
+        List<String> addresses = profiler.profile("addresses", () -> {
+            List<String> result = new ArrayList<>();
+            for (Appointment appointment : instrumented.findAppointments(null, null, FetchPlan.SLOT_ONLY)) {
+                result.add(appointment.getProvider().getAddress());
+            }
+            return result;
+        });
+        entityManagerFactory.getCache().evictAll();
+        SqlCallProfile profile = lastProfileOf(() -> instrumented.findAppointments(null, null));
+
+        // then
+        assertThat(addresses, hasSize(8));
+        SqlStatistics lazy = profiler.snapshot("addresses");
+        assertThat(lazy.calls(), is(1L));
+        assertThat(lazy.nPlusOneCalls(), is(1L));
+        assertThat(lazy.statements(), is(greaterThanOrEqualTo(5L)));
+        assertThat(lazy.rowsRead(), is(greaterThanOrEqualTo(12L)));
+        assertThat(profile.isNPlusOne(), is(false));
+        assertThat(profile.statements(), is(1));
+    }
+
+    @Test
+    public void sp03_repeatedStatementsListSqlAndDistinctParameters() {
+        // given
+        List<Customer> customers = new ArrayList<>();
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        for (int i = 0; i < 5; i++) {
+            Customer customer = prepareCustomer(lastname, firstname, i + email);
+            repository.create(customer);
+            customers.add(customer);
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0).plusHours(i)));
+        }
+        repository.create(provider);
+        for (int i = 0; i < 5; i++) {
+            repository.reserve(provider.getAppointments().get(i), customers.get(i));
+        }
+        entityManagerFactory.getCache().evictAll();
+
+        // when
+        SqlCallProfile profile = lastProfileOf(() -> profiler.profile("customers", () -> {
+            for (Appointment appointment : instrumented.read(provider.getId()).getAppointments()) {
+                appointment.getCustomer().getEmail();
+            }
+            return null;
+        }));
+        SqlCallProfile delete = lastProfileOf(() -> instrumented.delete(provider));
+
+        // then
+        assertThat(profile.operation(), is("customers"));
+        assertThat(profile.statements(), is(profile.executions().values().stream().mapToInt(Integer::intValue).sum()));
+        assertThat(profile.isNPlusOne(), is(true));
+        SqlCallProfile.RepeatedStatement repeated = profile.repeatedStatements().get(0);
+        assertThat(repeated.sql(), containsStringIgnoringCase("CUSTOMER"));
+        assertThat(repeated.executions(), is(5));
+        assertThat(repeated.distinctParameters(), is(5));
+        assertThat(delete.operation(), is("delete(Provider)"));
+        assertThat(delete.executions(), hasKey(SqlProfiler.BATCH));
+    }
+
+    @Test
+    public void sp04_nestedScopesCountForTheOutermostCall() {
+        // given
+        repository.create(prepareCustomer(lastname, firstname, email));
+        entityManagerFactory.getCache().evictAll();
+
+        // when
+        int statements = profiler.profile("outer", () -> {
+            instrumented.read(email);
+            return profiler.profile("inner", () -> instrumented.findCustomersBy(lastname, null)).size();
+        });
+
+        // then
+        assertThat(statements, is(1));
+        assertThat(profiler.snapshot("outer").statements(), is(2L));
+        assertThat(profiler.snapshot("inner"), is(nullValue()));
+        assertThat(profiler.snapshot("read(String)"), is(nullValue()));
+        assertThrows(IllegalArgumentException.class, () -> profiler.setRepeatThreshold(1));
+        assertThat(SqlProfiler.install(entityManagerFactory), is(sameInstance(profiler)));
+    }
+
+    @Test
+    public void sp05_reserveIsASingleStatement() {
+        // given
+        Customer customer = prepareCustomer(lastname, firstname, email);
+        repository.create(customer);
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+        provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 11, 0)));
+        repository.create(provider);
+        entityManagerFactory.getCache().evictAll();
+        List<Boolean> reserved = new ArrayList<>();
+
+        // when
+        SqlCallProfile known = lastProfileOf(() -> reserved.add(
+                instrumented.reserve(provider.getAppointments().get(0), customer)));
+        SqlCallProfile unknown = lastProfileOf(() -> reserved.add(
+                instrumented.reserve(provider.getAppointments().get(1), prepareCustomer("last", "first", "unknown"))));
+
+        // then
+        assertThat(reserved, contains(true, false));
+        assertThat(known.statements(), is(1));
+        assertThat(unknown.statements(), is(1));
+        assertThat(provider.getAppointments().get(1).getCustomer(), is(nullValue()));
+    }
+
+    private SqlCallProfile lastProfileOf(Runnable call) {
+        List<SqlCallProfile> calls = new ArrayList<>();
+        profiler.setListener(calls::add);
+        try {
+            call.run();
+        } finally {
+            profiler.setListener(null);
+        }
+        assertThat(calls, hasSize(1));
+        return calls.get(0);
+    }
+}
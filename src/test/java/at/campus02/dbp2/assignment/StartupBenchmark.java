@@ -0,0 +1,128 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Misst den Neustart über einer befüllten Datenbank ohne DDL-Generierung (siehe {@link SchemaBootstrap}).
+ * <p>Beim ersten Aufruf wird die Datenbank <code>database</code> (ein eigenes Verzeichnis, nicht die der Tests) mit
+ * <code>appointments</code> Appointments befüllt, davon ist nur der Anteil <code>free</code> nicht gebucht. Danach wird
+ * <code>restarts</code> Mal eine neue EntityManagerFactory samt Repository erzeugt und die Zeit der einzelnen Schritte
+ * ausgegeben. Spätere Aufrufe mit derselben Datenbank überspringen das Befüllen.
+ * <p>Aufruf: <code>gradle startupBenchmark -Dappointments=5000000 -DperProvider=1000 -Dfree=0.1 -Drestarts=5
+ * -Ddatabase=build/startup-database</code>
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int appointments = Integer.getInteger("appointments", 5_000_000);
+        int perProvider = Integer.getInteger("perProvider", 1000);
+        double free = Double.parseDouble(System.getProperty("free", "0.1"));
+        int restarts = Integer.getInteger("restarts", 5);
+        String database = System.getProperty("database", "build/startup-database");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(PersistenceUnitProperties.JDBC_URL, "jdbc:derby:" + database + ";create=true");
+        properties.put(AppointmentRepositoryFactory.OCCUPANCY_FILE, database + ".calendar");
+        properties.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.NONE);
+
+        long existing = countAppointments(properties);
+        if (existing != appointments) {
+            System.out.printf("database has %d appointments, creating %d ...%n", existing, appointments);
+            populate(properties, appointments, perProvider, free);
+        }
+
+        for (int restart = 1; restart <= restarts; restart++) {
+            long begin = System.nanoTime();
+            EntityManagerFactory factory = Persistence.createEntityManagerFactory("assignment", properties);
+            try {
+                factory.createEntityManager().close();
+                long login = System.nanoTime();
+                boolean migrated = SchemaBootstrap.ensure(factory);
+                long schema = System.nanoTime();
+                AppointmentRepositoryFactory.get(factory);
+                long end = System.nanoTime();
+                System.out.printf("restart %d: login %.2f s, schema %s %.2f s, repository %.2f s, total %.2f s%n",
+                        restart, (login - begin) / 1e9, migrated ? "migrated" : "validated", (schema - login) / 1e9,
+                        (end - schema) / 1e9, (end - begin) / 1e9);
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    private static long countAppointments(Map<String, Object> properties) {
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("assignment", properties);
+        try {
+            SchemaBootstrap.ensure(factory);
+            EntityManager manager = factory.createEntityManager();
+            try {
+                return manager.createQuery("select count(a) from Appointment a", Long.class).getSingleResult();
+            } finally {
+                manager.close();
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    private static void populate(Map<String, Object> properties, int appointments, int perProvider, double free)
+            throws Exception {
+        Map<String, Object> recreate = new HashMap<>(properties);
+        recreate.put(PersistenceUnitProperties.DDL_GENERATION, PersistenceUnitProperties.DROP_AND_CREATE);
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("assignment", recreate);
+        try {
+            AppointmentRepository repository = AppointmentRepositoryFactory.get(factory);
+            long begin = System.nanoTime();
+            LocalDateTime start = LocalDateTime.of(2021, 1, 4, 8, 0);
+            int providerCount = 0;
+            for (int created = 0; created < appointments; ) {
+                List<Provider> chunk = new ArrayList<>();
+                for (int p = 0; p < 100 && created < appointments; p++, providerCount++) {
+                    Provider provider = BaseSpecification.prepareProvider(
+                            ProviderType.values()[providerCount % ProviderType.values().length],
+                            "Gasse " + providerCount + ", Graz");
+                    for (int i = 0; i < perProvider && created < appointments; i++, created++) {
+                        provider.getAppointments().add(BaseSpecification.prepareAppointment(start.plusMinutes(15L * i)));
+                    }
+                    chunk.add(provider);
+                }
+                repository.createAll(chunk);
+                System.out.printf("  %d appointments, %.0f s%n", created, (System.nanoTime() - begin) / 1e9);
+            }
+
+            EntityManager manager = factory.createEntityManager();
+            try {
+                manager.getTransaction().begin();
+                Connection connection = manager.unwrap(Connection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("INSERT INTO CUSTOMER (EMAIL, FIRSTNAME, LASTNAME, FIRSTNAME_SEARCH, LASTNAME_SEARCH) "
+                            + "VALUES ('stamm@campus02.at', 'Stamm', 'Kunde', 'stamm', 'kunde')");
+                    // jedes n-te Appointment bleibt frei
+                    int every = Math.max(1, (int) Math.round(1 / Math.max(free, 1e-9)));
+                    statement.executeUpdate("UPDATE APPOINTMENT SET CUSTOMER_EMAIL = 'stamm@campus02.at' "
+                            + "WHERE MOD(ID, " + every + ") <> 0");
+                }
+                manager.getTransaction().commit();
+            } finally {
+                if (manager.getTransaction().isActive())
+                    manager.getTransaction().rollback();
+                manager.close();
+            }
+            System.out.printf("created %d providers and %d appointments in %.0f s%n",
+                    providerCount, appointments, (System.nanoTime() - begin) / 1e9);
+        } finally {
+            factory.close();
+        }
+    }
+}
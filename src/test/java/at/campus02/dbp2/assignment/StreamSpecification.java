@@ -0,0 +1,118 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class StreamSpecification extends BaseSpecification {
+
+    private Provider setupTestData(int count) {
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+        for (int i = 0; i < count; i++) {
+            provider.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 1, 8, 0).plusMinutes(i * 15L)));
+        }
+        createProvider(provider);
+        return provider;
+    }
+
+    @Test
+    public void s01_streamContainsSameAppointmentsAsList() {
+        // given
+        setupTestData(250);
+        List<Appointment> expected = repository.findAppointments(null, null);
+
+        // when
+        List<Appointment> streamed;
+        try (Stream<Appointment> stream = repository.streamAppointments(null, null, 16)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(streamed, hasSize(250));
+        assertThat(streamed, containsInAnyOrder(expected.toArray()));
+        for (int i = 1; i < streamed.size(); i++) {
+            assertThat(streamed.get(i - 1).getTime().isBefore(streamed.get(i).getTime()), is(true));
+        }
+    }
+
+    @Test
+    public void s02_streamRespectsBoundsAndSkipsReservedAppointments() {
+        // given
+        Provider provider = setupTestData(20);
+        Customer customer = createCustomer(prepareCustomer(lastname, firstname, email));
+        LocalDateTime from = LocalDateTime.of(2021, 11, 1, 9, 0);
+        LocalDateTime to = LocalDateTime.of(2021, 11, 1, 10, 0);
+        Appointment reserved = provider.getAppointments().stream()
+                .filter(appointment -> appointment.getTime().equals(from.plusMinutes(15)))
+                .findFirst().get();
+        repository.reserve(reserved, customer);
+
+        // when
+        List<Appointment> streamed;
+        try (Stream<Appointment> stream = repository.streamAppointments(from, to, 2)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+
+        // then
+        assertThat(streamed, hasSize(4));
+        assertThat(streamed, not(hasItem(reserved)));
+    }
+
+    @Test
+    public void s03_closingPartiallyConsumedStreamsReleasesConnections() {
+        // given
+        setupTestData(50);
+
+        // when
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            for (int i = 0; i < 200; i++) {
+                try (Stream<Appointment> stream = repository.streamAppointments(null, null, 10)) {
+                    assertThat(stream.findFirst().isPresent(), is(true));
+                }
+            }
+        });
+
+        // then
+        assertThat(repository.findAppointments(null, null), hasSize(50));
+    }
+
+    @Test
+    public void s04_customerStreams() {
+        // given
+        for (int i = 0; i < 30; i++) {
+            createCustomer(prepareCustomer(i % 2 == 0 ? "Dornacher" : "Huber", firstname, String.format("mail%02d@campus02.at", i)));
+        }
+
+        // when
+        List<String> all;
+        try (Stream<Customer> stream = repository.streamCustomers(4)) {
+            all = stream.map(Customer::getEmail).collect(Collectors.toList());
+        }
+        long dornacher;
+        try (Stream<Customer> stream = repository.streamCustomersBy("dorn", null, MatchMode.PREFIX, 4)) {
+            dornacher = stream.count();
+        }
+
+        // then
+        assertThat(all, hasSize(30));
+        assertThat(all.get(0), is("mail00@campus02.at"));
+        assertThat(all.get(29), is("mail29@campus02.at"));
+        assertThat(dornacher, is(15L));
+    }
+
+    @Test
+    public void s05_invalidArgumentsThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> repository.streamAppointments(null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> repository.streamCustomers(0));
+        assertThrows(IllegalArgumentException.class, () -> repository.streamCustomersBy(null, null, null, 10));
+    }
+}
@@ -0,0 +1,93 @@
+package at.campus02.dbp2.assignment;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TrigramSpecification extends BaseSpecification {
+
+    private List<String> trigramsInDatabase(Provider provider) {
+        return entityManager.createQuery(
+                "select t.trigram from AddressTrigram t where t.providerId = :id", String.class)
+                .setParameter("id", provider.getId())
+                .getResultList();
+    }
+
+    @Test
+    public void t01_trigramsCoverEverySubstring() {
+        // when
+        java.util.Set<String> trigrams = AddressTrigrams.of("Graz");
+
+        // then
+        assertThat(trigrams, contains("gra", "raz", "az ", "z  "));
+        assertThat(AddressTrigrams.ofSearch("RAZ"), contains("raz"));
+        assertThat(AddressTrigrams.ofSearch("az"), is(empty()));
+        assertThat(AddressTrigrams.ofSearch("gr%z"), is(empty()));
+    }
+
+    @Test
+    public void t02_trigramsAreMaintainedOnCreateUpdateAndDelete() {
+        // given
+        Provider provider = prepareProvider(ProviderType.ALLGMEINMEDIZIN, graz_doc1);
+
+        // when
+        repository.create(provider);
+
+        // then
+        assertThat(new HashSet<>(trigramsInDatabase(provider)), is(AddressTrigrams.of(graz_doc1)));
+
+        // and when
+        provider.setAddress(leibnitz_test);
+        repository.update(provider);
+
+        // then
+        assertThat(new HashSet<>(trigramsInDatabase(provider)), is(AddressTrigrams.of(leibnitz_test)));
+
+        // and when
+        repository.delete(provider);
+
+        // then
+        assertThat(trigramsInDatabase(provider), is(empty()));
+    }
+
+    @Test
+    public void t03_trigramsAreMaintainedForProvidersWrittenOutsideTheRepository() {
+        // given
+        Provider provider = createProvider(prepareProvider(ProviderType.PHYSIOTHERAPIE, leibnitz_test));
+
+        // when
+        List<Provider> providers = repository.findProvidersBy(ProviderType.PHYSIOTHERAPIE, "hauptPLATZ");
+
+        // then
+        assertThat(providers, contains(provider));
+        assertThat(new HashSet<>(trigramsInDatabase(provider)), is(AddressTrigrams.of(leibnitz_test)));
+    }
+
+    @Test
+    public void t04_searchFindsOnlyProvidersContainingTheWholePart() {
+        // given
+        Provider provider1 = prepareProvider(ProviderType.ALLGMEINMEDIZIN, "Annenstraße 14, 8020 Graz");
+        Provider provider2 = prepareProvider(ProviderType.ALLGMEINMEDIZIN, "Grabenstraße 3, 8010 Graz");
+        Provider provider3 = prepareProvider(ProviderType.ALLGMEINMEDIZIN, "Raabaer Gasse 2, 8074 Raaba");
+        provider1.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 10, 0)));
+        provider3.getAppointments().add(prepareAppointment(LocalDateTime.of(2021, 11, 20, 11, 0)));
+        repository.create(provider1);
+        repository.create(provider2);
+        repository.create(provider3);
+
+        // when / then
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "straße"), containsInAnyOrder(provider1, provider2));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "aaba"), contains(provider3));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "enstr"), containsInAnyOrder(provider1, provider2));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "Annenstraße 3"), is(empty()));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "8"), hasSize(3));
+        assertThat(repository.findProvidersBy(ProviderType.ALLGMEINMEDIZIN, "80_0"), containsInAnyOrder(provider1, provider2));
+        assertThat(repository.findAppointmentsAt("raaba"), contains(provider3.getAppointments().get(0)));
+        assertThat(repository.findAppointmentsAt("GRAZ"), contains(provider1.getAppointments().get(0)));
+    }
+}
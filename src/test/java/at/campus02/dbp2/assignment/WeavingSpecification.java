@@ -0,0 +1,56 @@
+package at.campus02.dbp2.assignment;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.changetracking.AttributeChangeTrackingPolicy;
+import org.eclipse.persistence.descriptors.changetracking.ChangeTracker;
+import org.eclipse.persistence.internal.weaving.PersistenceWeaved;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.eclipse.persistence.sessions.changesets.ObjectChangeSet;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class WeavingSpecification extends BaseSpecification {
+
+    private ClassDescriptor descriptor(Class<?> type) {
+        return JpaHelper.getServerSession(entityManagerFactory).getDescriptor(type);
+    }
+
+    @Test
+    public void we01_entitiesAreWovenAtBuildTime() {
+        for (Class<?> entity : new Class<?>[]{Appointment.class, Customer.class, Provider.class}) {
+            assertThat(entity.getName(), PersistenceWeaved.class.isAssignableFrom(entity), is(true));
+            assertThat(entity.getName(), ChangeTracker.class.isAssignableFrom(entity), is(true));
+        }
+    }
+
+    @Test
+    public void we02_entitiesUseAttributeChangeTracking() {
+        for (Class<?> entity : new Class<?>[]{Appointment.class, Customer.class, Provider.class}) {
+            assertThat(entity.getName(), descriptor(entity).getObjectChangePolicy(),
+                    instanceOf(AttributeChangeTrackingPolicy.class));
+        }
+    }
+
+    @Test
+    public void we03_commitOnlyContainsTheChangedAttributes() {
+        // given
+        createCustomer(prepareCustomer(lastname, firstname, email));
+        entityManager.clear();
+
+        // when
+        entityManager.getTransaction().begin();
+        Customer customer = entityManager.find(Customer.class, email);
+        customer.setFirstname("changed");
+        UnitOfWork unitOfWork = entityManager.unwrap(UnitOfWork.class);
+        ObjectChangeSet changes = unitOfWork.getCurrentChanges().getObjectChangeSetForClone(customer);
+        entityManager.getTransaction().commit();
+
+        // then
+        assertThat(changes.getChangedAttributeNames(), containsInAnyOrder("firstname", "firstnameSearch"));
+        entityManager.clear();
+        assertThat(entityManager.find(Customer.class, email).getFirstname(), is("changed"));
+    }
+}